@@ -7,12 +7,19 @@ plugins {
   java
   id("org.springframework.boot") version "4.0.1"
   id("io.spring.dependency-management") version "1.1.7"
+  id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "com.github.anvaer.webpecker"
 version = "0.0.1-SNAPSHOT"
 description = ""
 
+java {
+  toolchain {
+    languageVersion = JavaLanguageVersion.of(21)
+  }
+}
+
 configurations {
   compileOnly {
     extendsFrom(configurations.annotationProcessor.get())
@@ -28,7 +35,10 @@ dependencies {
   implementation("org.springframework.boot:spring-boot-starter-websocket") {
     exclude(group = "org.springframework.boot", module = "spring-boot-starter-tomcat")
   }
+  implementation("org.springframework.boot:spring-boot-starter-actuator")
+  implementation("io.micrometer:micrometer-registry-prometheus")
   implementation("com.squareup.okhttp3:okhttp:5.1.0")
+  implementation("org.hdrhistogram:HdrHistogram:2.2.2")
   implementation("com.fasterxml.jackson.core:jackson-databind:2.17.0") {
     exclude(group = "net.bytebuddy", module = "byte-buddy")
   }
@@ -55,3 +65,10 @@ tasks.named<ProcessResources>("processResources") {
 tasks.named<Test>("test") {
   useJUnitPlatform()
 }
+
+jmh {
+  jmhVersion = "1.37"
+  profilers = listOf("gc")
+  resultFormat = "JSON"
+  includes = listOf(providers.gradleProperty("jmhIncludes").getOrElse(".*"))
+}
@@ -0,0 +1,64 @@
+package com.github.anvaer.webpecker.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import com.sun.net.httpserver.HttpServer;
+
+import okhttp3.Connection;
+import okhttp3.Protocol;
+
+final class BenchmarkSupport {
+
+  private static final byte[] BODY = "ok".getBytes(StandardCharsets.US_ASCII);
+
+  private BenchmarkSupport() {
+  }
+
+  static HttpServer startHttpStub() throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.createContext("/", exchange -> {
+      try (InputStream in = exchange.getRequestBody(); OutputStream out = exchange.getResponseBody()) {
+        in.readAllBytes();
+        exchange.sendResponseHeaders(200, BODY.length);
+        out.write(BODY);
+      }
+    });
+    server.start();
+    return server;
+  }
+
+  static String url(HttpServer server) {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+  }
+
+  static Connection connection(Protocol protocol) {
+    return (Connection) Proxy.newProxyInstance(
+        Connection.class.getClassLoader(),
+        new Class<?>[] { Connection.class },
+        (proxy, method, args) -> "protocol".equals(method.getName()) ? protocol : null);
+  }
+
+  static WebSocketSession discardingSession(String id, String protocol) {
+    return (WebSocketSession) Proxy.newProxyInstance(
+        WebSocketSession.class.getClassLoader(),
+        new Class<?>[] { WebSocketSession.class },
+        (proxy, method, args) -> switch (method.getName()) {
+          case "getId" -> id;
+          case "isOpen" -> true;
+          case "getAcceptedProtocol" -> protocol;
+          case "hashCode" -> System.identityHashCode(proxy);
+          case "equals" -> proxy == args[0];
+          case "toString" -> "BenchmarkSession[" + id + "]";
+          default -> null;
+        });
+  }
+}
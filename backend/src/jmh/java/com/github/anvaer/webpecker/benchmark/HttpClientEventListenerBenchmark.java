@@ -0,0 +1,83 @@
+package com.github.anvaer.webpecker.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.anvaer.webpecker.httpclient.HttpClientEventListener;
+import com.github.anvaer.webpecker.httpclient.RequestTag;
+import com.github.anvaer.webpecker.stats.CallTimings;
+import com.github.anvaer.webpecker.stats.ConnectionStats;
+import com.github.anvaer.webpecker.stats.LatencyStats;
+import com.github.anvaer.webpecker.websocket.WebSocketEventPublisher;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpClientEventListenerBenchmark {
+
+  @Param({ "true", "false" })
+  boolean callEvents;
+
+  WebSocketEventPublisher publisher;
+  Call call;
+  Connection connection;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    publisher = new WebSocketEventPublisher();
+    publisher.setCallEventsEnabled(callEvents);
+    publisher.registerSession(BenchmarkSupport.discardingSession("listener", WebSocketEventPublisher.BINARY_PROTOCOL));
+    Request request = new Request.Builder()
+        .url("http://127.0.0.1/")
+        .tag(RequestTag.class, new RequestTag(1, 1, new LatencyStats(), new ConnectionStats(), new CallTimings()))
+        .build();
+    call = new OkHttpClient().newCall(request);
+    connection = BenchmarkSupport.connection(Protocol.HTTP_1_1);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    publisher.shutdown();
+  }
+
+  @Benchmark
+  public HttpClientEventListener plainCall() {
+    HttpClientEventListener listener = new HttpClientEventListener(publisher);
+    listener.callStart(call);
+    listener.dnsStart(call, "127.0.0.1");
+    listener.dnsEnd(call, "127.0.0.1", List.of());
+    listener.connectionAcquired(call, connection);
+    listener.requestHeadersStart(call);
+    listener.requestHeadersEnd(call, call.request());
+    listener.responseHeadersStart(call);
+    listener.responseHeadersEnd(call, null);
+    listener.responseBodyStart(call);
+    listener.responseBodyEnd(call, 2);
+    listener.connectionReleased(call, connection);
+    listener.callEnd(call);
+    return listener;
+  }
+}
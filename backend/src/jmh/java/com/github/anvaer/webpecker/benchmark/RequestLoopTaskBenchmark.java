@@ -0,0 +1,69 @@
+package com.github.anvaer.webpecker.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.anvaer.webpecker.httpclient.HttpClient;
+import com.github.anvaer.webpecker.httpclient.HttpClientConfig;
+import com.github.anvaer.webpecker.requestloop.RequestLoopTask;
+import com.github.anvaer.webpecker.websocket.WebSocketEventPublisher;
+import com.sun.net.httpserver.HttpServer;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class RequestLoopTaskBenchmark {
+
+  private static final int ITERATIONS = 100;
+
+  @Param({ "true", "false" })
+  boolean callEvents;
+
+  HttpServer server;
+  String url;
+  WebSocketEventPublisher publisher;
+  HttpClient httpClient;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    server = BenchmarkSupport.startHttpStub();
+    url = BenchmarkSupport.url(server);
+    publisher = new WebSocketEventPublisher();
+    publisher.setCallEventsEnabled(callEvents);
+    publisher.registerSession(BenchmarkSupport.discardingSession("task", WebSocketEventPublisher.BINARY_PROTOCOL));
+    HttpClientConfig config = new HttpClientConfig();
+    httpClient = new HttpClient(
+        config.okHttpClient(120000, 4096, 4096, config.cachingDns(30000, "")), publisher);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    publisher.shutdown();
+    server.stop(0);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ITERATIONS)
+  public RequestLoopTask blockingIterations() {
+    RequestLoopTask task = new RequestLoopTask(1, 0, ITERATIONS, url, null, httpClient, publisher);
+    task.call();
+    return task;
+  }
+}
@@ -0,0 +1,92 @@
+package com.github.anvaer.webpecker.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.github.anvaer.webpecker.httpclient.CallEvent;
+import com.github.anvaer.webpecker.websocket.WebSocketEventPublisher;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebSocketEventPublisherBenchmark {
+
+  private static final int FLUSH_EVENTS = 64;
+
+  @Param({ "webpecker.json.v1", "webpecker.binary.v1" })
+  String protocol;
+
+  @Param({ "drop_oldest", "coalesce" })
+  String overflowPolicy;
+
+  WebSocketEventPublisher publisher;
+  WebSocketSession session;
+  WebSocketEventPublisher flushPublisher;
+  WebSocketSession flushSession;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    publisher = new WebSocketEventPublisher(65536, overflowPolicy);
+    session = BenchmarkSupport.discardingSession("publisher", protocol);
+    publisher.registerSession(session);
+    flushPublisher = WebSocketEventPublisher.withoutFlusher(65536, overflowPolicy);
+    flushSession = BenchmarkSupport.discardingSession("flush", protocol);
+    flushPublisher.registerSession(flushSession);
+    flushPublisher.startProgress(2, false);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    publisher.shutdown();
+    flushPublisher.shutdown();
+  }
+
+  @Benchmark
+  public void registerEvent() {
+    publisher.registerEvent(1, 1, CallEvent.RESPONSE_HEADERS_END, 1_700_000_000_000L, 12);
+  }
+
+  @Benchmark
+  public void updateIteration() {
+    publisher.updateIteration(session, 1, 1, "200");
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void registerEventContended() {
+    publisher.registerEvent(1, 1, CallEvent.RESPONSE_HEADERS_END, 1_700_000_000_000L, 12);
+  }
+
+  // one flusher pass over a mixed batch on the calling thread; the producer share is what
+  // registerEvent and updateIteration measure on their own
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void flushBatch() {
+    for (int i = 1; i <= FLUSH_EVENTS; i++) {
+      flushPublisher.registerEvent(1, i, CallEvent.RESPONSE_HEADERS_END, 1_700_000_000_000L, 12);
+      flushPublisher.updateIteration(flushSession, 1, i, "200");
+      flushPublisher.updateIteration(flushSession, 2, i, i % 10 == 0 ? "503" : "200");
+    }
+    flushPublisher.updateState(flushSession, 1, "running");
+    flushPublisher.flush();
+  }
+}
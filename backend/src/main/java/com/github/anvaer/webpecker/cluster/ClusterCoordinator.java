@@ -0,0 +1,346 @@
+package com.github.anvaer.webpecker.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.anvaer.webpecker.stats.LatencyStats;
+import com.github.anvaer.webpecker.websocket.WebSocketEventPublisher;
+
+import jakarta.annotation.PreDestroy;
+
+@Component
+public class ClusterCoordinator {
+
+  private static final Logger log = LoggerFactory.getLogger(ClusterCoordinator.class);
+  private static final int CONNECT_TIMEOUT_MS = 2000;
+  private static final long PUBLISH_INTERVAL_MS = 1000;
+  private static final long REDIAL_INITIAL_MS = 500;
+  private static final long REDIAL_MAX_MS = 30_000;
+
+  private final List<InetSocketAddress> workers;
+  private final WebSocketEventPublisher publisher;
+  private final ObjectMapper mapper;
+  private final Map<InetSocketAddress, WorkerLink> links = new ConcurrentHashMap<>();
+  private final Map<Integer, DistributedTask> tasks = new ConcurrentHashMap<>();
+  private final Map<InetSocketAddress, Long> redialDelays = new ConcurrentHashMap<>();
+  private final ScheduledThreadPoolExecutor scheduler;
+
+  public ClusterCoordinator(
+      @Value("${cluster.workers:}") String workers,
+      WebSocketEventPublisher publisher,
+      ObjectMapper mapper) {
+    this.workers = parseWorkers(workers);
+    this.publisher = publisher;
+    this.mapper = mapper;
+    this.scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread t = new Thread(r, "cluster-coordinator");
+      t.setDaemon(true);
+      return t;
+    });
+    if (!this.workers.isEmpty()) {
+      scheduler.scheduleAtFixedRate(this::publishProgress,
+          PUBLISH_INTERVAL_MS, PUBLISH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+      this.workers.forEach(address -> scheduleDial(address, 0));
+    }
+  }
+
+  public static List<InetSocketAddress> parseWorkers(String workers) {
+    List<InetSocketAddress> addresses = new ArrayList<>();
+    if (workers == null || workers.isBlank()) {
+      return addresses;
+    }
+    for (String worker : workers.split(",")) {
+      String trimmed = worker.trim();
+      int colon = trimmed.lastIndexOf(':');
+      if (colon <= 0) {
+        throw new IllegalArgumentException("Invalid worker address: " + trimmed);
+      }
+      addresses.add(InetSocketAddress.createUnresolved(trimmed.substring(0, colon),
+          Integer.parseInt(trimmed.substring(colon + 1))));
+    }
+    return addresses;
+  }
+
+  public boolean isEnabled() {
+    return !workers.isEmpty();
+  }
+
+  public int getConnectedWorkers() {
+    return (int) links.values().stream().filter(WorkerLink::isOpen).count();
+  }
+
+  public int getActiveTasks() {
+    return tasks.size();
+  }
+
+  public boolean submit(int id, String url, int repeat, double rate, long delay, WebSocketSession session) {
+    List<WorkerLink> available = workers.stream()
+        .map(links::get)
+        .filter(link -> link != null && link.isOpen())
+        .toList();
+    if (available.size() < workers.size()) {
+      log.warn("Task {}: {} of {} cluster workers are unreachable.", id,
+          workers.size() - available.size(), workers.size());
+    }
+    int shards = Math.min(available.size(), Math.max(1, repeat));
+    if (shards == 0) {
+      return false;
+    }
+    DistributedTask task = new DistributedTask(id, repeat, session);
+    for (int i = 0; i < shards; i++) {
+      task.shards.put(available.get(i), new Shard());
+    }
+    tasks.put(id, task);
+    publisher.updateState(session, id, "running");
+    List<WorkerLink> failed = new ArrayList<>();
+    for (int i = 0; i < shards; i++) {
+      WorkerLink link = available.get(i);
+      int share = repeat / shards + (i < repeat % shards ? 1 : 0);
+      try {
+        ClusterProtocol.writeSubmit(link.out,
+            new ClusterProtocol.Submit(id, url, share, rate > 0 ? rate / shards : 0, delay));
+      } catch (IOException e) {
+        log.warn("Failed to submit task {} to worker {}.", id, link.address, e);
+        failed.add(link);
+      }
+    }
+    failed.forEach(WorkerLink::close);
+    return true;
+  }
+
+  public boolean hasTask(int id) {
+    return tasks.containsKey(id);
+  }
+
+  public boolean cancel(int id) {
+    DistributedTask task = tasks.get(id);
+    if (task == null) {
+      return false;
+    }
+    for (WorkerLink link : task.shards.keySet()) {
+      try {
+        ClusterProtocol.writeCancel(link.out, id);
+      } catch (IOException e) {
+        log.warn("Failed to cancel task {} on worker {}.", id, link.address, e);
+        link.close();
+      }
+    }
+    return true;
+  }
+
+  public void cancelAll() {
+    tasks.keySet().forEach(this::cancel);
+  }
+
+  // dials stay off the submitting thread; a dead worker is retried with a doubling backoff
+  private void scheduleDial(InetSocketAddress address, long delayMs) {
+    try {
+      scheduler.schedule(() -> Thread.ofVirtual().name("cluster-dial-" + address).start(() -> dial(address)),
+          delayMs, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // shutting down
+    }
+  }
+
+  private void dial(InetSocketAddress address) {
+    WorkerLink link = links.get(address);
+    if (link != null && link.isOpen()) {
+      return;
+    }
+    try {
+      links.put(address, new WorkerLink(address));
+      redialDelays.remove(address);
+    } catch (IOException e) {
+      long delayMs = redialDelays.merge(address, REDIAL_INITIAL_MS,
+          (previous, initial) -> Math.min(previous * 2, REDIAL_MAX_MS));
+      if (delayMs == REDIAL_INITIAL_MS) {
+        log.warn("Cluster worker {} is unreachable; retrying in the background.", address, e);
+      }
+      scheduleDial(address, delayMs);
+    }
+  }
+
+  private void onProgress(WorkerLink link, ClusterProtocol.Progress progress) {
+    DistributedTask task = tasks.get(progress.taskId());
+    Shard shard = task == null ? null : task.shards.get(link);
+    if (shard == null) {
+      return;
+    }
+    shard.iteration = progress.iteration();
+    shard.errors = progress.errors();
+    synchronized (task) {
+      task.latency.add(progress.latency());
+      task.dirty = true;
+    }
+  }
+
+  private void onFinished(WorkerLink link, int id, String state) {
+    DistributedTask task = tasks.get(id);
+    Shard shard = task == null ? null : task.shards.get(link);
+    if (shard == null || shard.state != null) {
+      return;
+    }
+    shard.state = state;
+    String overall = task.state();
+    if (overall != null && tasks.remove(id, task)) {
+      publish(task, overall);
+      publisher.updateState(task.session, id, overall);
+    }
+  }
+
+  private void onLinkLost(WorkerLink link) {
+    for (DistributedTask task : tasks.values()) {
+      if (task.shards.containsKey(link)) {
+        onFinished(link, task.id, "cancelled");
+      }
+    }
+  }
+
+  private void publishProgress() {
+    for (DistributedTask task : tasks.values()) {
+      if (task.dirty) {
+        publish(task, "running");
+      }
+    }
+  }
+
+  private void publish(DistributedTask task, String state) {
+    Map<String, Object> progress = new LinkedHashMap<>();
+    progress.put("id", task.id);
+    progress.put("state", state);
+    progress.put("workers", task.shards.size());
+    progress.put("repeat", task.repeat);
+    progress.put("iteration", task.shards.values().stream().mapToInt(s -> s.iteration).sum());
+    progress.put("errors", task.shards.values().stream().mapToLong(s -> s.errors).sum());
+    synchronized (task) {
+      progress.put("total", LatencyStats.percentiles(task.latency));
+      task.dirty = false;
+    }
+    try {
+      publisher.publishEvent(mapper.writeValueAsString(Map.of("distributed", progress)));
+    } catch (JsonProcessingException e) {
+      log.warn("Failed to serialize distributed progress.", e);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    scheduler.shutdownNow();
+    links.values().forEach(WorkerLink::close);
+  }
+
+  private static class DistributedTask {
+
+    private final int id;
+    private final int repeat;
+    private final WebSocketSession session;
+    private final Map<WorkerLink, Shard> shards = new ConcurrentHashMap<>();
+    private final Histogram latency = new Histogram(1, LatencyStats.HIGHEST_TRACKABLE_MICROS, 2);
+    private volatile boolean dirty;
+
+    DistributedTask(int id, int repeat, WebSocketSession session) {
+      this.id = id;
+      this.repeat = repeat;
+      this.session = session;
+    }
+
+    String state() {
+      boolean cancelled = false;
+      for (Shard shard : shards.values()) {
+        if (shard.state == null) {
+          return null;
+        }
+        cancelled |= !"done".equals(shard.state);
+      }
+      return cancelled ? "cancelled" : "done";
+    }
+  }
+
+  private static class Shard {
+    private volatile int iteration;
+    private volatile long errors;
+    private volatile String state;
+  }
+
+  private class WorkerLink {
+
+    private final InetSocketAddress address;
+    private final Socket socket;
+    private final DataOutputStream out;
+    private volatile boolean open = true;
+
+    WorkerLink(InetSocketAddress address) throws IOException {
+      this.address = address;
+      this.socket = new Socket();
+      socket.connect(new InetSocketAddress(address.getHostString(), address.getPort()), CONNECT_TIMEOUT_MS);
+      socket.setTcpNoDelay(true);
+      this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      Thread.ofVirtual().name("cluster-link-" + address).start(this::readLoop);
+    }
+
+    boolean isOpen() {
+      return open;
+    }
+
+    private void readLoop() {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+        while (true) {
+          ClusterProtocol.Frame frame = ClusterProtocol.readFrame(in);
+          switch (frame.type()) {
+            case ClusterProtocol.PROGRESS:
+              onProgress(this, ClusterProtocol.readProgress(frame, LatencyStats.HIGHEST_TRACKABLE_MICROS));
+              break;
+            case ClusterProtocol.FINISHED:
+              ClusterProtocol.Finished finished = ClusterProtocol.readFinished(frame);
+              onFinished(this, finished.taskId(), finished.state());
+              break;
+            default:
+              log.warn("Unknown cluster frame type: {}", frame.type());
+          }
+        }
+      } catch (IOException e) {
+        if (open) {
+          log.warn("Lost connection to cluster worker {}.", address, e);
+        }
+      } finally {
+        close();
+      }
+    }
+
+    void close() {
+      if (!open) {
+        return;
+      }
+      open = false;
+      try {
+        socket.close();
+      } catch (IOException e) {
+        log.warn("Failed to close cluster worker link.", e);
+      }
+      onLinkLost(this);
+      scheduleDial(address, REDIAL_INITIAL_MS);
+    }
+  }
+}
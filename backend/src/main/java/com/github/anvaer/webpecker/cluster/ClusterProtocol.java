@@ -0,0 +1,121 @@
+package com.github.anvaer.webpecker.cluster;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+
+import org.HdrHistogram.Histogram;
+
+final class ClusterProtocol {
+
+  static final byte SUBMIT = 1;
+  static final byte CANCEL = 2;
+  static final byte PROGRESS = 3;
+  static final byte FINISHED = 4;
+
+  private static final int MAX_FRAME_SIZE = 1 << 20;
+
+  private ClusterProtocol() {
+  }
+
+  record Submit(int taskId, String url, int repeat, double rate, long delay) {
+  }
+
+  record Progress(int taskId, int iteration, long errors, Histogram latency) {
+  }
+
+  record Finished(int taskId, String state) {
+  }
+
+  record Frame(byte type, byte[] payload) {
+
+    DataInputStream data() {
+      return new DataInputStream(new ByteArrayInputStream(payload));
+    }
+  }
+
+  static void writeSubmit(DataOutputStream out, Submit submit) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream payload = new DataOutputStream(bytes);
+    payload.writeInt(submit.taskId());
+    payload.writeUTF(submit.url());
+    payload.writeInt(submit.repeat());
+    payload.writeDouble(submit.rate());
+    payload.writeLong(submit.delay());
+    writeFrame(out, SUBMIT, bytes.toByteArray());
+  }
+
+  static void writeCancel(DataOutputStream out, int taskId) throws IOException {
+    writeFrame(out, CANCEL, ByteBuffer.allocate(Integer.BYTES).putInt(taskId).array());
+  }
+
+  static void writeProgress(DataOutputStream out, Progress progress) throws IOException {
+    Histogram latency = progress.latency();
+    ByteBuffer payload = ByteBuffer.allocate(16 + latency.getNeededByteBufferCapacity());
+    payload.putInt(progress.taskId())
+        .putInt(progress.iteration())
+        .putLong(progress.errors());
+    int encoded = latency.encodeIntoCompressedByteBuffer(payload);
+    writeFrame(out, PROGRESS, Arrays.copyOf(payload.array(), 16 + encoded));
+  }
+
+  static void writeFinished(DataOutputStream out, Finished finished) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream payload = new DataOutputStream(bytes);
+    payload.writeInt(finished.taskId());
+    payload.writeUTF(finished.state());
+    writeFrame(out, FINISHED, bytes.toByteArray());
+  }
+
+  static Frame readFrame(DataInputStream in) throws IOException {
+    byte type = in.readByte();
+    int length = in.readInt();
+    if (length < 0 || length > MAX_FRAME_SIZE) {
+      throw new IOException("Invalid frame length: " + length);
+    }
+    byte[] payload = new byte[length];
+    in.readFully(payload);
+    return new Frame(type, payload);
+  }
+
+  static Submit readSubmit(Frame frame) throws IOException {
+    DataInputStream in = frame.data();
+    return new Submit(in.readInt(), in.readUTF(), in.readInt(), in.readDouble(), in.readLong());
+  }
+
+  static int readCancel(Frame frame) {
+    return ByteBuffer.wrap(frame.payload()).getInt();
+  }
+
+  static Progress readProgress(Frame frame, long highestTrackableValue) throws IOException {
+    ByteBuffer payload = ByteBuffer.wrap(frame.payload());
+    int taskId = payload.getInt();
+    int iteration = payload.getInt();
+    long errors = payload.getLong();
+    try {
+      return new Progress(taskId, iteration, errors,
+          Histogram.decodeFromCompressedByteBuffer(payload, highestTrackableValue));
+    } catch (DataFormatException e) {
+      throw new IOException("Invalid histogram in progress frame.", e);
+    }
+  }
+
+  static Finished readFinished(Frame frame) throws IOException {
+    DataInputStream in = frame.data();
+    return new Finished(in.readInt(), in.readUTF());
+  }
+
+  private static void writeFrame(DataOutputStream out, byte type, byte[] payload) throws IOException {
+    synchronized (out) {
+      out.writeByte(type);
+      out.writeInt(payload.length);
+      out.write(payload);
+      out.flush();
+    }
+  }
+}
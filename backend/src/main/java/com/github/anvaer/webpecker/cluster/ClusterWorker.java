@@ -0,0 +1,206 @@
+package com.github.anvaer.webpecker.cluster;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.anvaer.webpecker.httpclient.HttpClient;
+import com.github.anvaer.webpecker.requestloop.RequestLoopTask;
+import com.github.anvaer.webpecker.websocket.WebSocketEventPublisher;
+
+import jakarta.annotation.PreDestroy;
+
+@Component
+public class ClusterWorker {
+
+  private static final Logger log = LoggerFactory.getLogger(ClusterWorker.class);
+  private static final long PROGRESS_INTERVAL_MS = 1000;
+
+  private final HttpClient httpClient;
+  private final WebSocketEventPublisher publisher;
+  private final ServerSocket serverSocket;
+  private final ScheduledThreadPoolExecutor scheduler;
+  private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+
+  public ClusterWorker(
+      @Value("${cluster.worker.port:-1}") int port,
+      HttpClient httpClient,
+      WebSocketEventPublisher publisher) throws IOException {
+    this.httpClient = httpClient;
+    this.publisher = publisher;
+    if (port < 0) {
+      this.serverSocket = null;
+      this.scheduler = null;
+      return;
+    }
+    this.serverSocket = new ServerSocket(port);
+    this.scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread t = new Thread(r, "cluster-worker-scheduler");
+      t.setDaemon(true);
+      return t;
+    });
+    scheduler.setRemoveOnCancelPolicy(true);
+    Thread.ofVirtual().name("cluster-worker-accept").start(this::acceptLoop);
+  }
+
+  public boolean isEnabled() {
+    return serverSocket != null;
+  }
+
+  public int getPort() {
+    return serverSocket == null ? -1 : serverSocket.getLocalPort();
+  }
+
+  public int getActiveTasks() {
+    return connections.stream().mapToInt(c -> c.tasks.size()).sum();
+  }
+
+  private void acceptLoop() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Connection connection = new Connection(serverSocket.accept());
+        connections.add(connection);
+        Thread.ofVirtual().name("cluster-worker-" + connection.socket.getRemoteSocketAddress())
+            .start(connection::readLoop);
+      } catch (IOException e) {
+        if (!serverSocket.isClosed()) {
+          log.warn("Cluster worker accept failed.", e);
+        }
+      }
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (serverSocket == null) {
+      return;
+    }
+    try {
+      serverSocket.close();
+    } catch (IOException e) {
+      log.warn("Failed to close cluster worker socket.", e);
+    }
+    connections.forEach(Connection::close);
+    scheduler.shutdownNow();
+  }
+
+  private class Connection {
+
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final Map<Integer, RequestLoopTask> tasks = new ConcurrentHashMap<>();
+    private final ScheduledFuture<?> progress;
+
+    Connection(Socket socket) throws IOException {
+      this.socket = socket;
+      socket.setTcpNoDelay(true);
+      this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      this.progress = scheduler.scheduleAtFixedRate(this::reportProgress,
+          PROGRESS_INTERVAL_MS, PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    void readLoop() {
+      try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+        while (true) {
+          ClusterProtocol.Frame frame = ClusterProtocol.readFrame(in);
+          switch (frame.type()) {
+            case ClusterProtocol.SUBMIT:
+              start(ClusterProtocol.readSubmit(frame));
+              break;
+            case ClusterProtocol.CANCEL:
+              RequestLoopTask task = tasks.get(ClusterProtocol.readCancel(frame));
+              if (task != null) {
+                task.cancelCall();
+              }
+              break;
+            default:
+              log.warn("Unknown cluster frame type: {}", frame.type());
+          }
+        }
+      } catch (EOFException e) {
+        // coordinator disconnected
+      } catch (IOException e) {
+        if (!socket.isClosed()) {
+          log.warn("Cluster worker connection failed.", e);
+        }
+      } finally {
+        close();
+      }
+    }
+
+    private void start(ClusterProtocol.Submit submit) {
+      int id = submit.taskId();
+      RequestLoopTask task = new RequestLoopTask(id, submit.delay(), submit.repeat(), submit.url(),
+          null, httpClient, publisher);
+      if (submit.rate() > 0) {
+        task.setRate(submit.rate());
+      }
+      publisher.startProgress(id, false);
+      RequestLoopTask previous = tasks.put(id, task);
+      if (previous != null) {
+        previous.cancelCall();
+      }
+      task.start(scheduler).whenComplete((v, e) -> finish(id, task));
+    }
+
+    private void finish(int id, RequestLoopTask task) {
+      if (!tasks.remove(id, task)) {
+        return;
+      }
+      publisher.clearProgress(id);
+      try {
+        sendProgress(id, task);
+        ClusterProtocol.writeFinished(out, new ClusterProtocol.Finished(id, task.getState().getState()));
+      } catch (IOException e) {
+        log.warn("Failed to report finished task {}.", id, e);
+        close();
+      }
+    }
+
+    private void reportProgress() {
+      try {
+        for (Map.Entry<Integer, RequestLoopTask> entry : tasks.entrySet()) {
+          sendProgress(entry.getKey(), entry.getValue());
+        }
+      } catch (IOException e) {
+        log.warn("Failed to report progress.", e);
+        close();
+      }
+    }
+
+    private void sendProgress(int id, RequestLoopTask task) throws IOException {
+      ClusterProtocol.writeProgress(out,
+          new ClusterProtocol.Progress(id, task.getIteration(), task.getErrors(), task.drainLatency()));
+    }
+
+    void close() {
+      if (!connections.remove(this)) {
+        return;
+      }
+      progress.cancel(false);
+      tasks.values().forEach(RequestLoopTask::cancelCall);
+      tasks.clear();
+      try {
+        socket.close();
+      } catch (IOException e) {
+        log.warn("Failed to close cluster connection.", e);
+      }
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package com.github.anvaer.webpecker.httpclient;
+
+import java.io.IOException;
+import java.util.zip.CRC32;
+
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+
+public class BodyDrainer {
+
+  private static final int SEGMENT_SIZE = 8192;
+
+  private final Buffer sink = new Buffer();
+  private final byte[] scratch;
+  private final CRC32 crc;
+
+  private long bytes;
+  private long nanos;
+  private boolean lengthMatches;
+
+  public BodyDrainer(boolean checksum) {
+    this.scratch = checksum ? new byte[SEGMENT_SIZE] : null;
+    this.crc = checksum ? new CRC32() : null;
+  }
+
+  public long drain(ResponseBody body) throws IOException {
+    long start = System.nanoTime();
+    bytes = 0;
+    if (crc != null) {
+      crc.reset();
+    }
+    BufferedSource source = body.source();
+    long read;
+    while ((read = source.read(sink, SEGMENT_SIZE)) != -1) {
+      bytes += read;
+      if (crc == null) {
+        sink.clear();
+      } else {
+        while (!sink.exhausted()) {
+          int n = sink.read(scratch, 0, scratch.length);
+          crc.update(scratch, 0, n);
+        }
+      }
+    }
+    long contentLength = body.contentLength();
+    lengthMatches = contentLength < 0 || contentLength == bytes;
+    nanos = System.nanoTime() - start;
+    return bytes;
+  }
+
+  public long bytes() {
+    return bytes;
+  }
+
+  public long nanos() {
+    return nanos;
+  }
+
+  public boolean lengthMatches() {
+    return lengthMatches;
+  }
+
+  public long checksum() {
+    return crc == null ? -1 : crc.getValue();
+  }
+}
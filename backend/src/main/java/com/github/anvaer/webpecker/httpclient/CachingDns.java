@@ -0,0 +1,101 @@
+package com.github.anvaer.webpecker.httpclient;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import okhttp3.Dns;
+
+public class CachingDns implements Dns {
+
+  private final Dns delegate;
+  private final long ttlNanos;
+  private final Map<String, Entry> overrides;
+  private final Map<String, Entry> cache = new ConcurrentHashMap<>();
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  public CachingDns(Dns delegate, long ttlMillis, Map<String, List<InetAddress>> overrides) {
+    this.delegate = delegate;
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    this.overrides = new HashMap<>();
+    overrides.forEach((host, addresses) -> this.overrides.put(host.toLowerCase(), new Entry(addresses, Long.MAX_VALUE)));
+  }
+
+  @Override
+  public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+    String host = hostname.toLowerCase();
+    Entry override = overrides.get(host);
+    if (override != null) {
+      return override.next();
+    }
+    Entry cached = cache.get(host);
+    if (cached != null && cached.expiresAtNanos() - System.nanoTime() > 0) {
+      hits.increment();
+      return cached.next();
+    }
+    misses.increment();
+    List<InetAddress> addresses = delegate.lookup(hostname);
+    Entry entry = new Entry(addresses, System.nanoTime() + ttlNanos);
+    cache.put(host, entry);
+    return entry.next();
+  }
+
+  public void clear() {
+    cache.clear();
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public static Map<String, List<InetAddress>> parseOverrides(String spec) throws UnknownHostException {
+    Map<String, List<InetAddress>> overrides = new HashMap<>();
+    if (spec == null || spec.isBlank()) {
+      return overrides;
+    }
+    for (String mapping : spec.split(";")) {
+      String[] parts = mapping.split("=", 2);
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Invalid DNS override: " + mapping);
+      }
+      List<InetAddress> addresses = new ArrayList<>();
+      for (String address : parts[1].split("\\|")) {
+        addresses.add(InetAddress.getByName(address.trim()));
+      }
+      overrides.put(parts[0].trim(), List.copyOf(addresses));
+    }
+    return overrides;
+  }
+
+  private record Entry(List<InetAddress> addresses, long expiresAtNanos, AtomicInteger cursor) {
+
+    Entry(List<InetAddress> addresses, long expiresAtNanos) {
+      this(List.copyOf(addresses), expiresAtNanos, new AtomicInteger());
+    }
+
+    List<InetAddress> next() {
+      int size = addresses.size();
+      if (size <= 1) {
+        return addresses;
+      }
+      int start = Math.floorMod(cursor.getAndIncrement(), size);
+      List<InetAddress> rotated = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        rotated.add(addresses.get((start + i) % size));
+      }
+      return rotated;
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package com.github.anvaer.webpecker.httpclient;
+
+public enum CallEvent {
+  CALL_START("callStart"),
+  PROXY_SELECT_START("proxySelectStart"),
+  PROXY_SELECT_END("proxySelectEnd"),
+  DNS_START("dnsStart"),
+  DNS_END("dnsEnd"),
+  CONNECT_START("connectStart"),
+  SECURE_CONNECT_START("secureConnectStart"),
+  SECURE_CONNECT_END("secureConnectEnd"),
+  CONNECT_END("connectEnd"),
+  CONNECT_FAILED("connectFailed"),
+  CONNECTION_ACQUIRED("connectionAcquired"),
+  CONNECTION_RELEASED("connectionReleased"),
+  REQUEST_HEADERS_START("requestHeadersStart"),
+  REQUEST_HEADERS_END("requestHeadersEnd"),
+  REQUEST_BODY_START("requestBodyStart"),
+  REQUEST_BODY_END("requestBodyEnd"),
+  REQUEST_FAILED("requestFailed"),
+  RESPONSE_HEADERS_START("responseHeadersStart"),
+  RESPONSE_HEADERS_END("responseHeadersEnd"),
+  RESPONSE_BODY_START("responseBodyStart"),
+  RESPONSE_BODY_END("responseBodyEnd"),
+  RESPONSE_FAILED("responseFailed"),
+  CALL_END("callEnd"),
+  CALL_FAILED("callFailed"),
+  CANCELED("canceled");
+
+  public static final int COUNT = values().length;
+
+  private final String eventName;
+
+  CallEvent(String eventName) {
+    this.eventName = eventName;
+  }
+
+  public String eventName() {
+    return eventName;
+  }
+}
@@ -0,0 +1,110 @@
+package com.github.anvaer.webpecker.httpclient;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dns;
+import okhttp3.OkHttpClient;
+
+class ClientRegistry {
+
+  private final OkHttpClient root;
+  private final AtomicReference<Generation> generation = new AtomicReference<>(new Generation(1));
+  private final LongAdder rebuilds = new LongAdder();
+
+  ClientRegistry(OkHttpClient root) {
+    this.root = root;
+  }
+
+  OkHttpClient client(ClientKey key) {
+    if (key.isDefault()) {
+      return root;
+    }
+    return generation.get().clients().computeIfAbsent(key, this::build);
+  }
+
+  void release(ClientKey key) {
+    generation.get().clients().remove(key);
+    if (key.connectionPool() != null) {
+      key.connectionPool().evictAll();
+    }
+  }
+
+  void reset() {
+    Generation previous = generation.getAndUpdate(g -> new Generation(g.version() + 1));
+    root.connectionPool().evictAll();
+    if (root.dns() instanceof CachingDns cachingDns) {
+      cachingDns.clear();
+    }
+    previous.clients().keySet().stream()
+        .map(ClientKey::connectionPool)
+        .filter(pool -> pool != null)
+        .forEach(ConnectionPool::evictAll);
+  }
+
+  int version() {
+    return generation.get().version();
+  }
+
+  long rebuilds() {
+    return rebuilds.sum();
+  }
+
+  int connectionCount() {
+    return pools().stream().mapToInt(ConnectionPool::connectionCount).sum();
+  }
+
+  int idleConnectionCount() {
+    return pools().stream().mapToInt(ConnectionPool::idleConnectionCount).sum();
+  }
+
+  int runningCalls() {
+    return root.dispatcher().runningCallsCount();
+  }
+
+  int queuedCalls() {
+    return root.dispatcher().queuedCallsCount();
+  }
+
+  private Set<ConnectionPool> pools() {
+    Set<ConnectionPool> pools = Collections.newSetFromMap(new IdentityHashMap<>());
+    pools.add(root.connectionPool());
+    generation.get().clients().values().forEach(client -> pools.add(client.connectionPool()));
+    return pools;
+  }
+
+  private OkHttpClient build(ClientKey key) {
+    rebuilds.increment();
+    OkHttpClient.Builder builder = root.newBuilder();
+    if (key.protocol() != null) {
+      builder.protocols(key.protocol().protocols());
+    }
+    if (key.connectionPool() != null) {
+      builder.connectionPool(key.connectionPool());
+    }
+    if (key.bypassDnsCache()) {
+      builder.dns(Dns.SYSTEM);
+    }
+    return builder.build();
+  }
+
+  record ClientKey(HttpProtocol protocol, ConnectionPool connectionPool, boolean bypassDnsCache) {
+
+    boolean isDefault() {
+      return protocol == null && connectionPool == null && !bypassDnsCache;
+    }
+  }
+
+  private record Generation(int version, Map<ClientKey, OkHttpClient> clients) {
+
+    Generation(int version) {
+      this(version, new ConcurrentHashMap<>());
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package com.github.anvaer.webpecker.httpclient;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+
+public class ConnectionProfile {
+
+  private static final long KEEP_ALIVE_MINUTES = 5;
+
+  private final Integer poolSize;
+  private final ClientRegistry.ClientKey key;
+  private volatile ClientRegistry registry;
+  private volatile OkHttpClient client;
+  private volatile int clientVersion;
+
+  public ConnectionProfile() {
+    this(null, null, false);
+  }
+
+  public ConnectionProfile(HttpProtocol protocol, Integer poolSize, boolean bypassDnsCache) {
+    this.poolSize = poolSize;
+    this.key = new ClientRegistry.ClientKey(protocol,
+        poolSize == null ? null : new ConnectionPool(poolSize, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES),
+        bypassDnsCache);
+  }
+
+  public HttpProtocol getProtocol() {
+    return key.protocol();
+  }
+
+  public Integer getPoolSize() {
+    return poolSize;
+  }
+
+  public boolean isBypassDnsCache() {
+    return key.bypassDnsCache();
+  }
+
+  public int getClientVersion() {
+    return clientVersion;
+  }
+
+  OkHttpClient client(ClientRegistry registry) {
+    OkHttpClient pinned = client;
+    if (pinned == null) {
+      clientVersion = registry.version();
+      pinned = registry.client(key);
+      this.registry = registry;
+      client = pinned;
+    }
+    return pinned;
+  }
+
+  public void release() {
+    ClientRegistry owner = registry;
+    if (owner != null && key.connectionPool() != null) {
+      owner.release(key);
+    }
+  }
+}
@@ -0,0 +1,56 @@
+package com.github.anvaer.webpecker.httpclient;
+
+import java.util.HashMap;
+import java.util.Map;
+
+final class CsvFeed {
+
+  private final Map<String, Integer> columns;
+  private final String[][] rows;
+
+  private CsvFeed(Map<String, Integer> columns, String[][] rows) {
+    this.columns = columns;
+    this.rows = rows;
+  }
+
+  static CsvFeed parse(String csv) {
+    if (csv == null || csv.isBlank()) {
+      return null;
+    }
+    String[] lines = csv.strip().split("\\R");
+    String[] header = split(lines[0]);
+    Map<String, Integer> columns = new HashMap<>();
+    for (int i = 0; i < header.length; i++) {
+      columns.put(header[i], i);
+    }
+    if (lines.length < 2) {
+      throw new IllegalArgumentException("CSV feed has no rows");
+    }
+    String[][] rows = new String[lines.length - 1][];
+    for (int i = 1; i < lines.length; i++) {
+      rows[i - 1] = split(lines[i]);
+    }
+    return new CsvFeed(columns, rows);
+  }
+
+  int column(String name) {
+    Integer index = columns.get(name);
+    if (index == null) {
+      throw new IllegalArgumentException("Unknown CSV column: " + name);
+    }
+    return index;
+  }
+
+  String value(int iteration, int column) {
+    String[] row = rows[Math.floorMod(iteration - 1, rows.length)];
+    return column < row.length ? row[column] : "";
+  }
+
+  private static String[] split(String line) {
+    String[] values = line.split(",", -1);
+    for (int i = 0; i < values.length; i++) {
+      values[i] = values[i].trim();
+    }
+    return values;
+  }
+}
@@ -1,63 +1,98 @@
 package com.github.anvaer.webpecker.httpclient;
 
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.web.socket.WebSocketSession;
 
+import com.github.anvaer.webpecker.stats.LoadSignal;
 import com.github.anvaer.webpecker.websocket.WebSocketEventPublisher;
 
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import okhttp3.Call;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 
 @Service
-public class HttpClient {
+public class HttpClient implements MeterBinder {
 
-  private final AtomicReference<OkHttpClient> okHttpClient = new AtomicReference<>();
-  private final WebSocketEventPublisher publisher;
-
-  private volatile WebSocketSession webSocketSession;
+  private final ClientRegistry registry;
+  private final LoadSignal loadSignal = new LoadSignal();
+  private volatile long callTimeoutMillis;
 
   @Autowired
   public HttpClient(OkHttpClient okHttpClient, WebSocketEventPublisher publisher) {
-    this.okHttpClient.set(okHttpClient.newBuilder().build());
-    this.publisher = publisher;
+    this.registry = new ClientRegistry(okHttpClient.newBuilder()
+        .eventListenerFactory(new HttpClientEventListener.Factory(publisher, loadSignal))
+        .build());
+    this.callTimeoutMillis = okHttpClient.callTimeoutMillis();
   }
 
-  public void addWebSocketSession(WebSocketSession webSocketSession) {
-    okHttpClient.getAndUpdate(client -> {
-      if (this.webSocketSession != null && this.webSocketSession.isOpen())
-        return client;
-      this.webSocketSession = webSocketSession;
-      return client.newBuilder()
-          .eventListenerFactory(new HttpClientEventListener.Factory(webSocketSession, publisher))
-          .build();
-    });
+  public void changeTimeout(long timeout) {
+    callTimeoutMillis = timeout;
   }
 
-  public void removeWebSocketSession() {
-    this.webSocketSession = null;
+  public void resetClient() {
+    registry.reset();
   }
 
-  public void changeTimeout(long timeout) {
-    okHttpClient.getAndUpdate(client -> client.newBuilder()
-        .callTimeout(timeout, TimeUnit.MILLISECONDS)
-        .build());
+  public int getClientVersion() {
+    return registry.version();
   }
 
-  public void resetClient() {
-    okHttpClient.get().connectionPool().evictAll();
+  public long getClientRebuilds() {
+    return registry.rebuilds();
+  }
+
+  public LoadSignal getLoadSignal() {
+    return loadSignal;
   }
 
-  public Call getRequest(String url, String requestTag) {
+  @Override
+  public void bindTo(MeterRegistry meterRegistry) {
+    Gauge.builder("webpecker.http.connections", registry, ClientRegistry::connectionCount)
+        .tag("state", "total")
+        .register(meterRegistry);
+    Gauge.builder("webpecker.http.connections", registry, ClientRegistry::idleConnectionCount)
+        .tag("state", "idle")
+        .register(meterRegistry);
+    Gauge.builder("webpecker.http.calls.running", registry, ClientRegistry::runningCalls)
+        .register(meterRegistry);
+    Gauge.builder("webpecker.http.calls.queued", registry, ClientRegistry::queuedCalls)
+        .register(meterRegistry);
+    Gauge.builder("webpecker.http.client.version", registry, ClientRegistry::version)
+        .register(meterRegistry);
+    FunctionTimer.builder("webpecker.http.calls", loadSignal, LoadSignal::getCalls, LoadSignal::getTotalNanos,
+        TimeUnit.NANOSECONDS)
+        .register(meterRegistry);
+  }
+
+  public ConnectionProfile newProfile(String protocol, Integer poolSize, boolean bypassDnsCache) {
+    return new ConnectionProfile(protocol == null ? null : HttpProtocol.of(protocol), poolSize, bypassDnsCache);
+  }
+
+  public Call getRequest(String url, RequestTag requestTag, ConnectionProfile profile) {
     Request request = new Request.Builder()
-        .tag(String.class, requestTag)
+        .tag(RequestTag.class, requestTag)
         .get()
         .url(url)
         .build();
-    return okHttpClient.get().newCall(request);
+    return newCall(request, profile);
+  }
+
+  public Call getRequest(RequestTemplate template, RequestTag requestTag, ConnectionProfile profile) {
+    Request request = template.newRequest(requestTag.taskId(), requestTag.iteration())
+        .tag(RequestTag.class, requestTag)
+        .build();
+    return newCall(request, profile);
+  }
+
+  private Call newCall(Request request, ConnectionProfile profile) {
+    Call call = profile.client(registry).newCall(request);
+    call.timeout().timeout(callTimeoutMillis, TimeUnit.MILLISECONDS);
+    return call;
   }
 }
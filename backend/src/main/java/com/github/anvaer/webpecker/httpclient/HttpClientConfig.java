@@ -1,9 +1,11 @@
 package com.github.anvaer.webpecker.httpclient;
 
+import java.net.UnknownHostException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLContext;
@@ -16,6 +18,8 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import okhttp3.Dispatcher;
+import okhttp3.Dns;
 import okhttp3.OkHttpClient;
 
 @Configuration
@@ -23,9 +27,24 @@ public class HttpClientConfig {
 
   private static final Logger log = LoggerFactory.getLogger(HttpClientConfig.class);
 
+  @Bean
+  public CachingDns cachingDns(
+      @Value("${httpclient.dns.ttl-ms:30000}") long ttlMillis,
+      @Value("${httpclient.dns.overrides:}") String overrides) throws UnknownHostException {
+    return new CachingDns(Dns.SYSTEM, ttlMillis, CachingDns.parseOverrides(overrides));
+  }
+
   @Bean
   public OkHttpClient okHttpClient(
-      @Value("${httpclient.timeout:120000}") int httpTimeout) {
+      @Value("${httpclient.timeout:120000}") int httpTimeout,
+      @Value("${httpclient.dispatcher.max-requests:4096}") int maxRequests,
+      @Value("${httpclient.dispatcher.max-requests-per-host:4096}") int maxRequestsPerHost,
+      CachingDns cachingDns) {
+
+    Dispatcher dispatcher = new Dispatcher(Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("okhttp-dispatcher-", 0).factory()));
+    dispatcher.setMaxRequests(maxRequests);
+    dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
 
     X509TrustManager trustAllManager = new X509TrustManager() {
       @Override
@@ -50,11 +69,15 @@ public class HttpClientConfig {
     } catch (NoSuchAlgorithmException | KeyManagementException e) {
       log.warn("Unable to init custom SSL context, using default OkHttpClient.", e);
       return new OkHttpClient.Builder()
+          .dispatcher(dispatcher)
+          .dns(cachingDns)
           .callTimeout(httpTimeout, TimeUnit.MILLISECONDS)
           .build();
     }
 
     return new OkHttpClient.Builder()
+        .dispatcher(dispatcher)
+        .dns(cachingDns)
         .sslSocketFactory(sslContext.getSocketFactory(), trustAllManager)
         .hostnameVerifier((hostname, session) -> true)
         .callTimeout(httpTimeout,
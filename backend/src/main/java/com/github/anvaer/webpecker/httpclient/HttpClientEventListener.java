@@ -5,10 +5,10 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
-
-import org.springframework.web.socket.WebSocketSession;
+import java.util.concurrent.TimeUnit;
 
+import com.github.anvaer.webpecker.stats.LatencyStats;
+import com.github.anvaer.webpecker.stats.LoadSignal;
 import com.github.anvaer.webpecker.websocket.WebSocketEventPublisher;
 
 import okhttp3.Call;
@@ -22,173 +22,224 @@ import okhttp3.Response;
 
 public class HttpClientEventListener extends EventListener {
 
-  private static final ConcurrentHashMap<Call, Long> callStartTime = new ConcurrentHashMap<>();
-
-  private final WebSocketSession webSocketSession;
   private final WebSocketEventPublisher publisher;
+  private final LoadSignal loadSignal;
+
+  private final long[] timestamps = new long[CallEvent.COUNT];
+  private long callStartMillis;
+  private RequestTag requestTag;
+
+  public HttpClientEventListener(WebSocketEventPublisher publisher) {
+    this(publisher, null);
+  }
 
-  public HttpClientEventListener(WebSocketSession webSocketSession, WebSocketEventPublisher publisher) {
-    this.webSocketSession = webSocketSession;
+  public HttpClientEventListener(WebSocketEventPublisher publisher, LoadSignal loadSignal) {
     this.publisher = publisher;
+    this.loadSignal = loadSignal;
   }
 
-  private void sendEvent(String name, Call call) {
-    Long startTime = callStartTime.get(call);
-    if (startTime == null)
+  public long timestamp(CallEvent event) {
+    return timestamps[event.ordinal()];
+  }
+
+  public long elapsedNanos(CallEvent from, CallEvent to) {
+    long start = timestamps[from.ordinal()];
+    long end = timestamps[to.ordinal()];
+    return start == 0 || end == 0 ? -1 : end - start;
+  }
+
+  private void onEvent(CallEvent event) {
+    long nowNanos = System.nanoTime();
+    timestamps[event.ordinal()] = nowNanos;
+    if (requestTag == null || !publisher.isCallEventsEnabled())
       return;
-    long nowMils = System.currentTimeMillis();
-    long elapsedMils = nowMils - startTime;
+    long elapsedMils = TimeUnit.NANOSECONDS.toMillis(nowNanos - timestamps[CallEvent.CALL_START.ordinal()]);
+    publisher.registerEvent(requestTag.taskId(), requestTag.iteration(), event,
+        callStartMillis + elapsedMils, elapsedMils);
+  }
 
-    String requestTag = call.request().tag(String.class);
-    publisher.registerEvent(webSocketSession, requestTag, name, nowMils, elapsedMils);
+  private void recordPhase(LatencyStats.Phase phase, CallEvent from, CallEvent to) {
+    if (requestTag == null)
+      return;
+    long nanos = elapsedNanos(from, to);
+    if (nanos < 0)
+      return;
+    if (requestTag.latencyStats() != null) {
+      requestTag.latencyStats().record(phase, nanos);
+    }
+    if (requestTag.timings() != null) {
+      requestTag.timings().record(phase, nanos);
+    }
   }
 
   @Override
   public void callStart(Call call) {
-    long nowNanos = System.currentTimeMillis();
-    callStartTime.put(call, nowNanos);
-    sendEvent("callStart", call);
+    callStartMillis = System.currentTimeMillis();
+    requestTag = call.request().tag(RequestTag.class);
+    onEvent(CallEvent.CALL_START);
   }
 
   @Override
   public void proxySelectStart(Call call, HttpUrl url) {
-    sendEvent("proxySelectStart", call);
+    onEvent(CallEvent.PROXY_SELECT_START);
   }
 
   @Override
   public void proxySelectEnd(Call call, HttpUrl url, List<Proxy> proxies) {
-    sendEvent("proxySelectEnd", call);
+    onEvent(CallEvent.PROXY_SELECT_END);
   }
 
   @Override
   public void dnsStart(Call call, String domainName) {
-    sendEvent("dnsStart", call);
+    onEvent(CallEvent.DNS_START);
   }
 
   @Override
   public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
-    sendEvent("dnsEnd", call);
+    onEvent(CallEvent.DNS_END);
+    recordPhase(LatencyStats.Phase.DNS, CallEvent.DNS_START, CallEvent.DNS_END);
   }
 
   @Override
   public void connectStart(
       Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
-    sendEvent("connectStart", call);
+    onEvent(CallEvent.CONNECT_START);
   }
 
   @Override
   public void secureConnectStart(Call call) {
-    sendEvent("secureConnectStart", call);
+    onEvent(CallEvent.SECURE_CONNECT_START);
   }
 
   @Override
   public void secureConnectEnd(Call call, Handshake handshake) {
-    sendEvent("secureConnectEnd", call);
+    onEvent(CallEvent.SECURE_CONNECT_END);
+    recordPhase(LatencyStats.Phase.TLS, CallEvent.SECURE_CONNECT_START, CallEvent.SECURE_CONNECT_END);
   }
 
   @Override
   public void connectEnd(
       Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
-    sendEvent("connectEnd", call);
+    onEvent(CallEvent.CONNECT_END);
+    recordPhase(LatencyStats.Phase.CONNECT, CallEvent.CONNECT_START, CallEvent.CONNECT_END);
   }
 
   @Override
   public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
       Protocol protocol, IOException ioe) {
-    sendEvent("connectFailed", call);
+    onEvent(CallEvent.CONNECT_FAILED);
   }
 
   @Override
   public void connectionAcquired(Call call, Connection connection) {
-    sendEvent("connectionAcquired", call);
+    onEvent(CallEvent.CONNECTION_ACQUIRED);
+    if (requestTag != null && requestTag.connectionStats() != null) {
+      requestTag.connectionStats().record(connection.protocol().toString(),
+          timestamp(CallEvent.CONNECT_START) == 0);
+    }
   }
 
   @Override
   public void connectionReleased(Call call, Connection connection) {
-    sendEvent("connectionReleased", call);
+    onEvent(CallEvent.CONNECTION_RELEASED);
   }
 
   @Override
   public void requestHeadersStart(Call call) {
-    sendEvent("requestHeadersStart", call);
+    onEvent(CallEvent.REQUEST_HEADERS_START);
   }
 
   @Override
   public void requestHeadersEnd(Call call, Request request) {
-    sendEvent("requestHeadersEnd", call);
+    onEvent(CallEvent.REQUEST_HEADERS_END);
   }
 
   @Override
   public void requestBodyStart(Call call) {
-    sendEvent("requestBodyStart", call);
+    onEvent(CallEvent.REQUEST_BODY_START);
   }
 
   @Override
   public void requestBodyEnd(Call call, long byteCount) {
-    sendEvent("requestBodyEnd", call);
+    onEvent(CallEvent.REQUEST_BODY_END);
   }
 
   @Override
   public void requestFailed(Call call, IOException ioe) {
-    sendEvent("requestFailed", call);
+    onEvent(CallEvent.REQUEST_FAILED);
   }
 
   @Override
   public void responseHeadersStart(Call call) {
-    sendEvent("responseHeadersStart", call);
+    onEvent(CallEvent.RESPONSE_HEADERS_START);
+    recordPhase(LatencyStats.Phase.TTFB, CallEvent.REQUEST_HEADERS_START, CallEvent.RESPONSE_HEADERS_START);
   }
 
   @Override
   public void responseHeadersEnd(Call call, Response response) {
-    sendEvent("responseHeadersEnd", call);
+    onEvent(CallEvent.RESPONSE_HEADERS_END);
   }
 
   @Override
   public void responseBodyStart(Call call) {
-    sendEvent("responseBodyStart", call);
+    onEvent(CallEvent.RESPONSE_BODY_START);
   }
 
   @Override
   public void responseBodyEnd(Call call, long byteCount) {
-    sendEvent("responseBodyEnd", call);
+    onEvent(CallEvent.RESPONSE_BODY_END);
   }
 
   @Override
   public void responseFailed(Call call, IOException ioe) {
-    sendEvent("responseFailed", call);
+    onEvent(CallEvent.RESPONSE_FAILED);
   }
 
   @Override
   public void callEnd(Call call) {
-    sendEvent("callEnd", call);
-    callStartTime.remove(call);
+    onEvent(CallEvent.CALL_END);
+    recordPhase(LatencyStats.Phase.TOTAL, CallEvent.CALL_START, CallEvent.CALL_END);
+    if (loadSignal != null && requestTag != null) {
+      long nanos = elapsedNanos(CallEvent.CALL_START, CallEvent.CALL_END);
+      if (nanos >= 0) {
+        loadSignal.record(nanos);
+      }
+    }
   }
 
   @Override
   public void callFailed(Call call, IOException ioe) {
-    sendEvent("callFailed", call);
-    callStartTime.remove(call);
+    onEvent(CallEvent.CALL_FAILED);
+    if (requestTag != null && requestTag.latencyStats() != null) {
+      requestTag.latencyStats().recordError();
+    }
+    if (loadSignal != null && requestTag != null) {
+      loadSignal.recordError();
+    }
   }
 
   @Override
   public void canceled(Call call) {
-    sendEvent("canceled", call);
-    callStartTime.remove(call);
+    onEvent(CallEvent.CANCELED);
   }
 
   public static class Factory implements EventListener.Factory {
 
-    private final WebSocketSession webSocketSession;
     private final WebSocketEventPublisher publisher;
+    private final LoadSignal loadSignal;
+
+    public Factory(WebSocketEventPublisher publisher) {
+      this(publisher, null);
+    }
 
-    public Factory(WebSocketSession webSocketSession, WebSocketEventPublisher publisher) {
-      this.webSocketSession = webSocketSession;
+    public Factory(WebSocketEventPublisher publisher, LoadSignal loadSignal) {
       this.publisher = publisher;
+      this.loadSignal = loadSignal;
     }
 
     @Override
     public EventListener create(Call call) {
-      return new HttpClientEventListener(webSocketSession, publisher);
+      return new HttpClientEventListener(publisher, loadSignal);
     }
   }
 }
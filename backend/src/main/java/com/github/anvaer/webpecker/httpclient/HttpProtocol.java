@@ -0,0 +1,38 @@
+package com.github.anvaer.webpecker.httpclient;
+
+import java.util.List;
+
+import okhttp3.Protocol;
+
+public enum HttpProtocol {
+  HTTP_1_1(List.of(Protocol.HTTP_1_1)),
+  HTTP_2(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1)),
+  H2C(List.of(Protocol.H2_PRIOR_KNOWLEDGE));
+
+  private final List<Protocol> protocols;
+
+  HttpProtocol(List<Protocol> protocols) {
+    this.protocols = protocols;
+  }
+
+  public List<Protocol> protocols() {
+    return protocols;
+  }
+
+  public static HttpProtocol of(String value) {
+    switch (value.trim().toLowerCase()) {
+      case "http/1.1":
+      case "http_1_1":
+        return HTTP_1_1;
+      case "h2":
+      case "http/2":
+      case "http_2":
+        return HTTP_2;
+      case "h2c":
+      case "h2_prior_knowledge":
+        return H2C;
+      default:
+        throw new IllegalArgumentException("Unknown protocol: " + value);
+    }
+  }
+}
@@ -0,0 +1,9 @@
+package com.github.anvaer.webpecker.httpclient;
+
+import com.github.anvaer.webpecker.stats.CallTimings;
+import com.github.anvaer.webpecker.stats.ConnectionStats;
+import com.github.anvaer.webpecker.stats.LatencyStats;
+
+public record RequestTag(int taskId, int iteration, LatencyStats latencyStats, ConnectionStats connectionStats,
+    CallTimings timings) {
+}
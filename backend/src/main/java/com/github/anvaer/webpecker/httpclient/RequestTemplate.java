@@ -0,0 +1,89 @@
+package com.github.anvaer.webpecker.httpclient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+
+public class RequestTemplate {
+
+  private static final Set<String> BODILESS_METHODS = Set.of("GET", "HEAD");
+  private static final Set<String> BODY_METHODS = Set.of("POST", "PUT", "PATCH");
+  private static final RequestBody EMPTY_BODY = RequestBody.create(new byte[0], null);
+
+  private final String method;
+  private final TemplateString url;
+  private final HttpUrl staticUrl;
+  private final Headers staticHeaders;
+  private final List<String> headerNames = new ArrayList<>();
+  private final List<TemplateString> headerValues = new ArrayList<>();
+  private final TemplateString body;
+  private final RequestBody staticBody;
+  private final MediaType mediaType;
+  private final StringBuilder scratch = new StringBuilder(256);
+
+  private RequestTemplate(String method, String url, Map<String, String> headers, String body, String csv) {
+    this.method = method == null ? "GET" : method.trim().toUpperCase();
+    if (body != null && BODILESS_METHODS.contains(this.method)) {
+      throw new IllegalArgumentException("Method " + this.method + " cannot have a body");
+    }
+    CsvFeed feed = CsvFeed.parse(csv);
+    this.url = TemplateString.compile(url, feed);
+    this.staticUrl = this.url.isStatic() ? HttpUrl.get(url) : null;
+
+    Headers.Builder fixed = new Headers.Builder();
+    String contentType = null;
+    if (headers != null) {
+      for (Map.Entry<String, String> header : headers.entrySet()) {
+        TemplateString value = TemplateString.compile(header.getValue(), feed);
+        if ("Content-Type".equalsIgnoreCase(header.getKey()) && body != null) {
+          contentType = header.getValue();
+        } else if (value.isStatic()) {
+          fixed.add(header.getKey(), value.literal());
+        } else {
+          headerNames.add(header.getKey());
+          headerValues.add(value);
+        }
+      }
+    }
+    this.staticHeaders = fixed.build();
+    this.mediaType = contentType == null ? null : MediaType.get(contentType);
+
+    this.body = body == null ? null : TemplateString.compile(body, feed);
+    if (this.body == null) {
+      this.staticBody = BODY_METHODS.contains(this.method) ? EMPTY_BODY : null;
+    } else if (this.body.isStatic()) {
+      this.staticBody = RequestBody.create(this.body.literal(), mediaType);
+    } else {
+      this.staticBody = null;
+    }
+  }
+
+  public static RequestTemplate compile(String method, String url, Map<String, String> headers, String body,
+      String csv) {
+    return new RequestTemplate(method, url, headers, body, csv);
+  }
+
+  Request.Builder newRequest(int taskId, int iteration) {
+    Request.Builder builder = new Request.Builder().headers(staticHeaders);
+    if (staticUrl != null) {
+      builder.url(staticUrl);
+    } else {
+      builder.url(url.render(scratch, taskId, iteration));
+    }
+    for (int i = 0; i < headerNames.size(); i++) {
+      builder.addHeader(headerNames.get(i), headerValues.get(i).render(scratch, taskId, iteration));
+    }
+    RequestBody requestBody = staticBody;
+    if (requestBody == null && body != null) {
+      requestBody = RequestBody.create(body.render(scratch, taskId, iteration), mediaType);
+    }
+    return builder.method(method, requestBody);
+  }
+}
@@ -0,0 +1,83 @@
+package com.github.anvaer.webpecker.httpclient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+final class TemplateString {
+
+  private static final Pattern VARIABLE = Pattern.compile("\\$\\{([^}]+)}");
+  private static final String CSV_PREFIX = "csv.";
+
+  private final Part[] parts;
+  private final String literal;
+
+  private TemplateString(Part[] parts, String literal) {
+    this.parts = parts;
+    this.literal = literal;
+  }
+
+  static TemplateString compile(String source, CsvFeed feed) {
+    List<Part> parts = new ArrayList<>();
+    Matcher matcher = VARIABLE.matcher(source);
+    int last = 0;
+    while (matcher.find()) {
+      if (matcher.start() > last) {
+        String text = source.substring(last, matcher.start());
+        parts.add((sb, id, iteration) -> sb.append(text));
+      }
+      parts.add(variable(matcher.group(1).trim(), feed));
+      last = matcher.end();
+    }
+    if (parts.isEmpty()) {
+      return new TemplateString(new Part[0], source);
+    }
+    if (last < source.length()) {
+      String text = source.substring(last);
+      parts.add((sb, id, iteration) -> sb.append(text));
+    }
+    return new TemplateString(parts.toArray(new Part[0]), null);
+  }
+
+  private static Part variable(String name, CsvFeed feed) {
+    switch (name) {
+      case "iteration":
+        return (sb, id, iteration) -> sb.append(iteration);
+      case "id":
+        return (sb, id, iteration) -> sb.append(id);
+      case "random":
+        return (sb, id, iteration) -> sb.append(ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE));
+      default:
+        if (name.startsWith(CSV_PREFIX) && feed != null) {
+          int column = feed.column(name.substring(CSV_PREFIX.length()));
+          return (sb, id, iteration) -> sb.append(feed.value(iteration, column));
+        }
+        throw new IllegalArgumentException("Unknown template variable: " + name);
+    }
+  }
+
+  boolean isStatic() {
+    return literal != null;
+  }
+
+  String literal() {
+    return literal;
+  }
+
+  String render(StringBuilder sb, int id, int iteration) {
+    if (literal != null) {
+      return literal;
+    }
+    sb.setLength(0);
+    for (Part part : parts) {
+      part.append(sb, id, iteration);
+    }
+    return sb.toString();
+  }
+
+  private interface Part {
+    void append(StringBuilder sb, int id, int iteration);
+  }
+}
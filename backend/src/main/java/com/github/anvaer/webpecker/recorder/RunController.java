@@ -0,0 +1,48 @@
+package com.github.anvaer.webpecker.recorder;
+
+import java.util.List;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+@RestController
+@RequestMapping("/api/runs")
+public class RunController {
+
+  private final RunRecorder recorder;
+
+  public RunController(RunRecorder recorder) {
+    this.recorder = recorder;
+  }
+
+  @GetMapping
+  public List<RunInfo> listRuns() {
+    return recorder.listRuns();
+  }
+
+  @GetMapping("/{runId}")
+  public ResponseEntity<StreamingResponseBody> exportRun(
+      @PathVariable String runId,
+      @RequestParam(defaultValue = "json") String format) {
+    RunInfo run = recorder.findRun(runId);
+    if (run == null) {
+      return ResponseEntity.notFound().build();
+    }
+    if ("csv".equalsIgnoreCase(format)) {
+      return ResponseEntity.ok()
+          .contentType(MediaType.parseMediaType("text/csv"))
+          .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + runId + ".csv\"")
+          .body(out -> recorder.exportCsv(run, out));
+    }
+    return ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_JSON)
+        .body(out -> recorder.exportJson(run, out));
+  }
+}
@@ -0,0 +1,20 @@
+package com.github.anvaer.webpecker.recorder;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+public class RunInfo {
+  private String runId;
+  private int taskId;
+  private String url;
+  private long startedAt;
+  private Long finishedAt;
+  private String state;
+  private long records;
+}
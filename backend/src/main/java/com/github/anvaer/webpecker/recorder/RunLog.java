@@ -0,0 +1,107 @@
+package com.github.anvaer.webpecker.recorder;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.anvaer.webpecker.stats.CallTimings;
+import com.github.anvaer.webpecker.stats.LatencyStats;
+
+public class RunLog {
+
+  static final int RECORD_SIZE = 48;
+  static final byte RECORD_MARKER = 1;
+
+  private static final LatencyStats.Phase[] PHASES = {
+      LatencyStats.Phase.TOTAL,
+      LatencyStats.Phase.DNS,
+      LatencyStats.Phase.CONNECT,
+      LatencyStats.Phase.TLS,
+      LatencyStats.Phase.TTFB,
+      LatencyStats.Phase.BODY
+  };
+
+  private final RunRecorder recorder;
+  private final RunInfo info;
+  private final Path dir;
+  private final int recordsPerSegment;
+  private final AtomicLong nextRecord = new AtomicLong();
+  private final AtomicBoolean finished = new AtomicBoolean();
+  private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+  RunLog(RunRecorder recorder, RunInfo info, Path dir, int recordsPerSegment) {
+    this.recorder = recorder;
+    this.info = info;
+    this.dir = dir;
+    this.recordsPerSegment = recordsPerSegment;
+  }
+
+  public String getRunId() {
+    return info.getRunId();
+  }
+
+  public void append(int iteration, int result, long sendLagMicros, CallTimings timings) {
+    if (finished.get()) {
+      return;
+    }
+    long record = nextRecord.getAndIncrement();
+    MappedByteBuffer segment;
+    try {
+      segment = segment((int) (record / recordsPerSegment));
+    } catch (IOException e) {
+      recorder.onWriteFailure(this, e);
+      return;
+    }
+    int offset = (int) (record % recordsPerSegment) * RECORD_SIZE;
+    segment.putInt(offset + 4, iteration);
+    segment.putLong(offset + 8, System.currentTimeMillis());
+    segment.putInt(offset + 16, result);
+    int position = offset + 20;
+    for (LatencyStats.Phase phase : PHASES) {
+      segment.putInt(position, timings == null ? -1 : timings.micros(phase));
+      position += 4;
+    }
+    segment.putInt(offset + 44, (int) Math.min(sendLagMicros, Integer.MAX_VALUE));
+    segment.put(offset, RECORD_MARKER);
+  }
+
+  public void finish(String state) {
+    if (!finished.compareAndSet(false, true)) {
+      return;
+    }
+    for (MappedByteBuffer segment : segments) {
+      if (segment != null) {
+        segment.force();
+      }
+    }
+    info.setState(state);
+    info.setFinishedAt(System.currentTimeMillis());
+    info.setRecords(nextRecord.get());
+    recorder.onFinish(this, info);
+  }
+
+  private MappedByteBuffer segment(int index) throws IOException {
+    MappedByteBuffer[] current = segments;
+    if (index < current.length && current[index] != null) {
+      return current[index];
+    }
+    synchronized (this) {
+      current = segments;
+      if (index < current.length && current[index] != null) {
+        return current[index];
+      }
+      MappedByteBuffer[] grown = Arrays.copyOf(current, Math.max(index + 1, current.length));
+      try (FileChannel channel = FileChannel.open(RunRecorder.segmentPath(dir, index),
+          StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        grown[index] = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) recordsPerSegment * RECORD_SIZE);
+      }
+      segments = grown;
+      return grown[index];
+    }
+  }
+}
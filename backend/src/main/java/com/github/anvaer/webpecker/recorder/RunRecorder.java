@@ -0,0 +1,223 @@
+package com.github.anvaer.webpecker.recorder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.anvaer.webpecker.websocket.EventRecords;
+
+import jakarta.annotation.PreDestroy;
+
+@Component
+public class RunRecorder {
+
+  private static final Logger log = LoggerFactory.getLogger(RunRecorder.class);
+  private static final Pattern RUN_ID = Pattern.compile("[A-Za-z0-9-]+");
+  private static final String META_FILE = "run.json";
+  private static final String CSV_HEADER =
+      "iteration,timestamp,result,totalMicros,dnsMicros,connectMicros,tlsMicros,ttfbMicros,bodyMicros,sendLagMicros\n";
+  private static final String[] JSON_FIELDS = {
+      "totalMicros", "dnsMicros", "connectMicros", "tlsMicros", "ttfbMicros", "bodyMicros", "sendLagMicros"
+  };
+
+  private final Path baseDir;
+  private final int recordsPerSegment;
+  private final boolean enabled;
+  private final ObjectMapper mapper;
+  private final Map<String, RunLog> active = new ConcurrentHashMap<>();
+
+  public RunRecorder(
+      @Value("${recorder.dir:runs}") String dir,
+      @Value("${recorder.segment-size:67108864}") long segmentSize,
+      @Value("${recorder.enabled:false}") boolean enabled,
+      ObjectMapper mapper) {
+    this.baseDir = Paths.get(dir);
+    this.recordsPerSegment = (int) Math.max(1, Math.min(segmentSize, Integer.MAX_VALUE) / RunLog.RECORD_SIZE);
+    this.enabled = enabled;
+    this.mapper = mapper;
+  }
+
+  public RunLog start(int taskId, String url) {
+    if (!enabled) {
+      return null;
+    }
+    long startedAt = System.currentTimeMillis();
+    RunInfo info = new RunInfo("task-" + taskId + "-" + startedAt, taskId, url, startedAt, null, "running", 0);
+    Path dir = baseDir.resolve(info.getRunId());
+    try {
+      Files.createDirectories(dir);
+      writeMeta(dir, info);
+    } catch (IOException e) {
+      log.warn("Unable to start run recording in {}.", dir, e);
+      return null;
+    }
+    RunLog run = new RunLog(this, info, dir, recordsPerSegment);
+    active.put(info.getRunId(), run);
+    return run;
+  }
+
+  public List<RunInfo> listRuns() {
+    List<RunInfo> runs = new ArrayList<>();
+    if (!Files.isDirectory(baseDir)) {
+      return runs;
+    }
+    try (Stream<Path> dirs = Files.list(baseDir)) {
+      dirs.filter(dir -> Files.isRegularFile(dir.resolve(META_FILE)))
+          .sorted()
+          .forEach(dir -> {
+            try {
+              runs.add(readMeta(dir));
+            } catch (IOException e) {
+              log.warn("Unreadable run metadata in {}.", dir, e);
+            }
+          });
+    } catch (IOException e) {
+      log.warn("Unable to list runs in {}.", baseDir, e);
+    }
+    return runs;
+  }
+
+  public RunInfo findRun(String runId) {
+    if (runId == null || !RUN_ID.matcher(runId).matches()) {
+      return null;
+    }
+    Path dir = baseDir.resolve(runId);
+    if (!Files.isRegularFile(dir.resolve(META_FILE))) {
+      return null;
+    }
+    try {
+      return readMeta(dir);
+    } catch (IOException e) {
+      log.warn("Unreadable run metadata in {}.", dir, e);
+      return null;
+    }
+  }
+
+  public void exportCsv(RunInfo run, OutputStream out) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    writer.write(CSV_HEADER);
+    StringBuilder line = new StringBuilder(128);
+    forEachRecord(run, (segment, offset) -> {
+      line.setLength(0);
+      line.append(segment.getInt(offset + 4)).append(',')
+          .append(segment.getLong(offset + 8)).append(',');
+      EventRecords.appendResult(line, segment.getInt(offset + 16));
+      for (int field = 20; field < RunLog.RECORD_SIZE; field += 4) {
+        line.append(',').append(segment.getInt(offset + field));
+      }
+      writer.append(line).append('\n');
+    });
+    writer.flush();
+  }
+
+  public void exportJson(RunInfo run, OutputStream out) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    writer.write('[');
+    StringBuilder line = new StringBuilder(256);
+    boolean[] first = { true };
+    forEachRecord(run, (segment, offset) -> {
+      line.setLength(0);
+      line.append(first[0] ? "" : ",")
+          .append("{\"iteration\":").append(segment.getInt(offset + 4))
+          .append(",\"timestamp\":").append(segment.getLong(offset + 8))
+          .append(",\"result\":\"");
+      EventRecords.appendResult(line, segment.getInt(offset + 16));
+      line.append('"');
+      for (int i = 0; i < JSON_FIELDS.length; i++) {
+        line.append(",\"").append(JSON_FIELDS[i]).append("\":").append(segment.getInt(offset + 20 + i * 4));
+      }
+      line.append('}');
+      writer.append(line);
+      first[0] = false;
+    });
+    writer.write(']');
+    writer.flush();
+  }
+
+  void onFinish(RunLog run, RunInfo info) {
+    active.remove(run.getRunId());
+    try {
+      writeMeta(baseDir.resolve(info.getRunId()), info);
+    } catch (IOException e) {
+      log.warn("Unable to finish run {}.", info.getRunId(), e);
+    }
+  }
+
+  void onWriteFailure(RunLog run, IOException e) {
+    log.warn("Run {} recording failed, stopping it.", run.getRunId(), e);
+    run.finish("recording failed");
+  }
+
+  static Path segmentPath(Path dir, int index) {
+    return dir.resolve("segment-%05d.log".formatted(index));
+  }
+
+  private void forEachRecord(RunInfo run, RecordVisitor visitor) throws IOException {
+    Path dir = baseDir.resolve(run.getRunId());
+    long remaining = run.getFinishedAt() == null ? Long.MAX_VALUE : run.getRecords();
+    List<Path> segments;
+    try (Stream<Path> files = Files.list(dir)) {
+      segments = files.filter(f -> f.getFileName().toString().startsWith("segment-"))
+          .sorted(Comparator.comparing(Path::toString))
+          .toList();
+    }
+    for (Path path : segments) {
+      MappedByteBuffer segment;
+      try (FileChannel channel = FileChannel.open(path)) {
+        segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      }
+      for (int offset = 0; offset + RunLog.RECORD_SIZE <= segment.capacity() && remaining > 0;
+          offset += RunLog.RECORD_SIZE) {
+        if (segment.get(offset) == RunLog.RECORD_MARKER) {
+          visitor.visit(segment, offset);
+        }
+        remaining--;
+      }
+    }
+  }
+
+  private void writeMeta(Path dir, RunInfo info) throws IOException {
+    Path tmp = dir.resolve(META_FILE + ".tmp");
+    Files.write(tmp, mapper.writeValueAsBytes(info));
+    Files.move(tmp, dir.resolve(META_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private RunInfo readMeta(Path dir) throws IOException {
+    RunInfo info = mapper.readValue(Files.readAllBytes(dir.resolve(META_FILE)), RunInfo.class);
+    if (info.getFinishedAt() == null && !active.containsKey(info.getRunId())) {
+      info.setState("interrupted");
+    }
+    return info;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    active.values().forEach(run -> run.finish("interrupted"));
+  }
+
+  private interface RecordVisitor {
+    void visit(MappedByteBuffer segment, int offset) throws IOException;
+  }
+}
@@ -0,0 +1,245 @@
+package com.github.anvaer.webpecker.requestloop;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.web.socket.WebSocketSession;
+
+import com.github.anvaer.webpecker.httpclient.ConnectionProfile;
+import com.github.anvaer.webpecker.httpclient.HttpClient;
+import com.github.anvaer.webpecker.httpclient.RequestTag;
+import com.github.anvaer.webpecker.stats.ConnectionStats;
+import com.github.anvaer.webpecker.stats.LatencySnapshot;
+import com.github.anvaer.webpecker.stats.LatencyStats;
+import com.github.anvaer.webpecker.websocket.EventRecords;
+import com.github.anvaer.webpecker.websocket.WebSocketEventPublisher;
+
+import okhttp3.Call;
+import okhttp3.Response;
+
+public class BatchTask {
+
+  private static final Pattern SITEMAP_LOC = Pattern.compile("<loc>\\s*(.*?)\\s*</loc>", Pattern.DOTALL);
+
+  private final int id;
+  private final String[] urls;
+  private final int repeat;
+  private final long total;
+  private final WebSocketSession webSocketSession;
+  private final HttpClient httpClient;
+  private final WebSocketEventPublisher publisher;
+
+  private final AtomicLong cursor = new AtomicLong();
+  private final AtomicIntegerArray completedPerUrl;
+  private final AtomicIntegerArray lastResults;
+  private final LongAdder completed = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LatencyStats latencyStats = new LatencyStats();
+  private final ConnectionStats connectionStats = new ConnectionStats();
+  private final ConnectionProfile connectionProfile = new ConnectionProfile();
+
+  private final AtomicBoolean cancelled = new AtomicBoolean(false);
+  private final AtomicBoolean finalReported = new AtomicBoolean(false);
+  private final AtomicInteger activeWorkers = new AtomicInteger();
+  private AtomicReferenceArray<Call> inFlight;
+  private volatile boolean paused;
+  private volatile String state = "Not started";
+
+  public BatchTask(int id, List<String> urls, Integer repeat, WebSocketSession webSocketSession,
+      HttpClient httpClient, WebSocketEventPublisher publisher) {
+    this.id = id;
+    this.urls = urls.toArray(String[]::new);
+    this.repeat = Math.max(1, repeat == null ? 1 : repeat);
+    this.total = (long) this.urls.length * this.repeat;
+    this.webSocketSession = webSocketSession;
+    this.httpClient = httpClient;
+    this.publisher = publisher;
+    this.completedPerUrl = new AtomicIntegerArray(this.urls.length);
+    this.lastResults = new AtomicIntegerArray(this.urls.length);
+  }
+
+  public static List<String> parseUrls(List<String> urls, String urlFile) {
+    Set<String> parsed = new LinkedHashSet<>();
+    if (urls != null) {
+      urls.stream().map(String::trim).filter(u -> !u.isEmpty()).forEach(parsed::add);
+    }
+    if (urlFile != null) {
+      Matcher matcher = SITEMAP_LOC.matcher(urlFile);
+      if (matcher.find()) {
+        do {
+          parsed.add(matcher.group(1).replace("&amp;", "&"));
+        } while (matcher.find());
+      } else {
+        urlFile.lines().map(String::trim).filter(l -> !l.isEmpty() && !l.startsWith("#")).forEach(parsed::add);
+      }
+    }
+    return new ArrayList<>(parsed);
+  }
+
+  public void start(ExecutorService executor, int workers) {
+    int count = (int) Math.max(1, Math.min(workers, total));
+    inFlight = new AtomicReferenceArray<>(count);
+    activeWorkers.set(count);
+    updateState("running");
+    for (int i = 0; i < count; i++) {
+      int worker = i;
+      executor.execute(() -> work(worker));
+    }
+  }
+
+  private void work(int worker) {
+    try {
+      long slot;
+      while (awaitResume() && (slot = cursor.getAndIncrement()) < total) {
+        int index = (int) (slot % urls.length);
+        int iteration = (int) Math.min(slot + 1, Integer.MAX_VALUE);
+        String result = execute(worker, urls[index], iteration);
+        if (result == null) {
+          break;
+        }
+        int code = EventRecords.resultCode(result);
+        lastResults.set(index, code);
+        completedPerUrl.incrementAndGet(index);
+        completed.increment();
+        if (isFailure(code)) {
+          failures.increment();
+        }
+        publisher.updateIteration(webSocketSession, id, iteration, result);
+      }
+    } finally {
+      if (activeWorkers.decrementAndGet() == 0) {
+        updateState(cancelled.get() ? "cancelled" : "done");
+      }
+    }
+  }
+
+  private String execute(int worker, String url, int iteration) {
+    Call call;
+    try {
+      call = httpClient.getRequest(url, new RequestTag(id, iteration, latencyStats, connectionStats, null),
+          connectionProfile);
+    } catch (IllegalArgumentException e) {
+      latencyStats.recordError();
+      return "network error";
+    }
+    inFlight.set(worker, call);
+    try (Response resp = call.execute()) {
+      return String.valueOf(resp.code());
+    } catch (SocketTimeoutException e) {
+      return cancelled.get() ? null : "timeout:connect/read";
+    } catch (InterruptedIOException e) {
+      return cancelled.get() ? null : "timeout";
+    } catch (IOException e) {
+      return cancelled.get() ? null : "network error";
+    } finally {
+      inFlight.set(worker, null);
+    }
+  }
+
+  private boolean awaitResume() {
+    if (!paused) {
+      return !cancelled.get();
+    }
+    synchronized (this) {
+      while (paused && !cancelled.get()) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          cancelled.set(true);
+        }
+      }
+    }
+    return !cancelled.get();
+  }
+
+  private static boolean isFailure(int code) {
+    return code <= 0 || code >= 400;
+  }
+
+  public synchronized void pause() {
+    if ("running".equals(state)) {
+      paused = true;
+      updateState("paused");
+    }
+  }
+
+  public synchronized void resume() {
+    if (paused) {
+      paused = false;
+      updateState("running");
+      notifyAll();
+    }
+  }
+
+  public void cancel() {
+    cancelled.set(true);
+    synchronized (this) {
+      notifyAll();
+    }
+    AtomicReferenceArray<Call> calls = inFlight;
+    if (calls == null) {
+      updateState("cancelled");
+      return;
+    }
+    for (int i = 0; i < calls.length(); i++) {
+      Call call = calls.get(i);
+      if (call != null) {
+        call.cancel();
+      }
+    }
+  }
+
+  private void updateState(String state) {
+    this.state = state;
+    if ("done".equals(state) || "cancelled".equals(state)) {
+      connectionProfile.release();
+    }
+    publisher.updateState(webSocketSession, id, state);
+  }
+
+  public boolean isFinished() {
+    return "done".equals(state) || "cancelled".equals(state);
+  }
+
+  public boolean needsReport() {
+    return !isFinished() || finalReported.compareAndSet(false, true);
+  }
+
+  public LatencySnapshot getLatencySnapshot() {
+    return latencyStats.snapshot(id);
+  }
+
+  public Summary getSummary() {
+    int completedUrls = 0;
+    int failingUrls = 0;
+    for (int i = 0; i < urls.length; i++) {
+      if (completedPerUrl.get(i) >= repeat) {
+        completedUrls++;
+      }
+      if (completedPerUrl.get(i) > 0 && isFailure(lastResults.get(i))) {
+        failingUrls++;
+      }
+    }
+    return new Summary(id, state, urls.length, repeat, Math.min(cursor.get(), total), completed.sum(),
+        failures.sum(), completedUrls, failingUrls, Math.max(0, activeWorkers.get()));
+  }
+
+  public record Summary(int id, String state, int urls, int repeat, long dispatched, long completed,
+      long failures, int completedUrls, int failingUrls, int workers) {
+  }
+}
@@ -0,0 +1,12 @@
+package com.github.anvaer.webpecker.requestloop;
+
+public enum BodyMode {
+  DISCARD,
+  DRAIN,
+  LENGTH,
+  CRC32;
+
+  public static BodyMode of(String value) {
+    return BodyMode.valueOf(value.trim().toUpperCase());
+  }
+}
@@ -0,0 +1,75 @@
+package com.github.anvaer.webpecker.requestloop;
+
+import com.github.anvaer.webpecker.stats.LoadSignal;
+
+public class ConcurrencyController {
+
+  public static final int DEFAULT_MIN = 1;
+  public static final int DEFAULT_MAX = 256;
+  public static final double DEFAULT_MAX_ERROR_RATE = 0.05;
+
+  private static final long MIN_SAMPLES = 20;
+  private static final double LATENCY_TOLERANCE = 2.0;
+  private static final double BACKOFF = 0.7;
+
+  private final int min;
+  private final int max;
+  private final long targetP99Micros;
+  private final double maxErrorRate;
+  private long baselineP99Micros;
+  private int knee;
+
+  public ConcurrencyController(int min, int max, long targetP99Micros, double maxErrorRate) {
+    this.min = Math.max(1, min);
+    this.max = Math.max(this.min, max);
+    this.targetP99Micros = targetP99Micros;
+    this.maxErrorRate = maxErrorRate;
+  }
+
+  public Decision next(int current, int inUse, LoadSignal.Sample sample) {
+    if (sample.calls() + sample.errors() < MIN_SAMPLES) {
+      return decide(current, clamp(current), "hold", "insufficient samples", sample);
+    }
+    if (sample.p99Micros() > 0 && (baselineP99Micros == 0 || sample.p99Micros() < baselineP99Micros)) {
+      baselineP99Micros = sample.p99Micros();
+    }
+    if (sample.errorRate() > maxErrorRate) {
+      return backOff(current, "error rate", sample);
+    }
+    if (sample.p99Micros() > latencyLimitMicros()) {
+      return backOff(current, "p99 latency", sample);
+    }
+    if (inUse < current) {
+      return decide(current, clamp(current), "hold", "limit not saturated", sample);
+    }
+    return decide(current, clamp(current + 1), "increase", "within limits", sample);
+  }
+
+  public int getKnee() {
+    return knee;
+  }
+
+  private Decision backOff(int current, String reason, LoadSignal.Sample sample) {
+    if (knee == 0 || current < knee) {
+      knee = current;
+    }
+    return decide(current, clamp((int) (current * BACKOFF)), "decrease", reason, sample);
+  }
+
+  private long latencyLimitMicros() {
+    return targetP99Micros > 0 ? targetP99Micros : (long) (baselineP99Micros * LATENCY_TOLERANCE);
+  }
+
+  private int clamp(int limit) {
+    return Math.min(max, Math.max(min, limit));
+  }
+
+  private Decision decide(int current, int limit, String action, String reason, LoadSignal.Sample sample) {
+    return new Decision(current, limit, action, reason, sample.calls(), sample.errorRate(),
+        sample.p99Micros(), latencyLimitMicros(), knee);
+  }
+
+  public record Decision(int previous, int limit, String action, String reason, long calls,
+      double errorRate, long p99Micros, long p99LimitMicros, int knee) {
+  }
+}
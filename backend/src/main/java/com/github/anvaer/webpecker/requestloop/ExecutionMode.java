@@ -0,0 +1,12 @@
+package com.github.anvaer.webpecker.requestloop;
+
+public enum ExecutionMode {
+  PLATFORM,
+  VIRTUAL,
+  ASYNC,
+  FAIR;
+
+  public static ExecutionMode of(String value) {
+    return ExecutionMode.valueOf(value.trim().toUpperCase());
+  }
+}
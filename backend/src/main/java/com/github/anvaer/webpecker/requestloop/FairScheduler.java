@@ -0,0 +1,153 @@
+package com.github.anvaer.webpecker.requestloop;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class FairScheduler {
+
+  private static final long STRIDE = 1 << 20;
+
+  private final List<Lane> lanes = new ArrayList<>();
+  private int capacity;
+  private int inUse;
+  private long arrivals;
+
+  FairScheduler(int capacity) {
+    this.capacity = capacity;
+  }
+
+  synchronized Lane register(int priority, int weight) {
+    Lane lane = new Lane(priority, Math.max(1, weight), arrivals++, minPass());
+    lanes.add(lane);
+    return lane;
+  }
+
+  void resize(int capacity) {
+    synchronized (this) {
+      this.capacity = capacity;
+    }
+    dispatch();
+  }
+
+  synchronized int inUse() {
+    return inUse;
+  }
+
+  synchronized int waiting() {
+    return (int) lanes.stream().filter(l -> l.pending != null).count();
+  }
+
+  private long minPass() {
+    return lanes.stream().mapToLong(l -> l.pass).min().orElse(0);
+  }
+
+  private void dispatch() {
+    List<Runnable> granted = new ArrayList<>();
+    synchronized (this) {
+      Lane next;
+      while (inUse < capacity && (next = nextLane()) != null) {
+        granted.add(next.grant());
+        inUse++;
+      }
+    }
+    granted.forEach(Runnable::run);
+  }
+
+  private Lane nextLane() {
+    Lane best = null;
+    for (Lane lane : lanes) {
+      if (lane.pending != null && (best == null || lane.before(best))) {
+        best = lane;
+      }
+    }
+    return best;
+  }
+
+  class Lane {
+
+    private final int priority;
+    private final int weight;
+    private final long arrival;
+    private final long enqueuedNanos = System.nanoTime();
+    private long pass;
+    private long firstGrantNanos;
+    private Runnable pending;
+
+    private Lane(int priority, int weight, long arrival, long pass) {
+      this.priority = priority;
+      this.weight = weight;
+      this.arrival = arrival;
+      this.pass = pass;
+    }
+
+    void submit(Runnable iteration) {
+      synchronized (FairScheduler.this) {
+        pending = iteration;
+      }
+      dispatch();
+    }
+
+    void release() {
+      synchronized (FairScheduler.this) {
+        inUse--;
+      }
+      dispatch();
+    }
+
+    boolean withdraw() {
+      synchronized (FairScheduler.this) {
+        boolean waiting = pending != null;
+        pending = null;
+        return waiting;
+      }
+    }
+
+    void close() {
+      synchronized (FairScheduler.this) {
+        pending = null;
+        lanes.remove(this);
+      }
+    }
+
+    int queuePosition() {
+      synchronized (FairScheduler.this) {
+        if (firstGrantNanos != 0 || !lanes.contains(this)) {
+          return 0;
+        }
+        int position = 1;
+        for (Lane lane : lanes) {
+          if (lane != this && lane.firstGrantNanos == 0 && lane.before(this)) {
+            position++;
+          }
+        }
+        return position;
+      }
+    }
+
+    long waitNanos() {
+      synchronized (FairScheduler.this) {
+        return (firstGrantNanos == 0 ? System.nanoTime() : firstGrantNanos) - enqueuedNanos;
+      }
+    }
+
+    private Runnable grant() {
+      Runnable iteration = pending;
+      pending = null;
+      pass += STRIDE / weight;
+      if (firstGrantNanos == 0) {
+        firstGrantNanos = System.nanoTime();
+      }
+      return iteration;
+    }
+
+    private boolean before(Lane other) {
+      if (priority != other.priority) {
+        return priority > other.priority;
+      }
+      if (pass != other.pass) {
+        return pass < other.pass;
+      }
+      return arrival < other.arrival;
+    }
+  }
+}
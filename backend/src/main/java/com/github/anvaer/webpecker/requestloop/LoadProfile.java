@@ -0,0 +1,76 @@
+package com.github.anvaer.webpecker.requestloop;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import com.github.anvaer.webpecker.websocket.LoadStageRequest;
+
+public class LoadProfile {
+
+  private static final int DEFAULT_RAMP_STEPS = 10;
+
+  public enum StageType {
+    HOLD,
+    RAMP,
+    SPIKE;
+
+    public static StageType of(String value) {
+      return StageType.valueOf(value.trim().toUpperCase());
+    }
+  }
+
+  public record Stage(StageType type, double rate, long durationNanos) {
+  }
+
+  private final List<Stage> stages;
+
+  private LoadProfile(List<Stage> stages) {
+    this.stages = List.copyOf(stages);
+  }
+
+  public static LoadProfile compile(List<LoadStageRequest> requests) {
+    if (requests == null || requests.isEmpty()) {
+      throw new IllegalArgumentException("Load profile has no stages.");
+    }
+    List<Stage> stages = new ArrayList<>();
+    for (LoadStageRequest req : requests) {
+      StageType type = req.getType() != null
+          ? StageType.of(req.getType())
+          : req.getToRate() != null ? StageType.RAMP : StageType.HOLD;
+      long durationNanos = TimeUnit.MILLISECONDS.toNanos(Optional.ofNullable(req.getDurationMillis()).orElse(0L));
+      if (durationNanos <= 0) {
+        throw new IllegalArgumentException("Stage duration must be positive.");
+      }
+      double rate = Optional.ofNullable(req.getRate()).orElse(0.0);
+      if (type == StageType.RAMP) {
+        double toRate = Optional.ofNullable(req.getToRate()).orElse(rate);
+        int steps = Math.max(1, Optional.ofNullable(req.getSteps()).orElse(DEFAULT_RAMP_STEPS));
+        long stepNanos = durationNanos / steps;
+        for (int i = 0; i < steps; i++) {
+          long stepDuration = i == steps - 1 ? durationNanos - stepNanos * (steps - 1) : stepNanos;
+          stages.add(stage(type, rate + (toRate - rate) * (i + 1) / steps, stepDuration));
+        }
+      } else {
+        stages.add(stage(type, rate, durationNanos));
+      }
+    }
+    return new LoadProfile(stages);
+  }
+
+  private static Stage stage(StageType type, double rate, long durationNanos) {
+    if (rate <= 0) {
+      throw new IllegalArgumentException("Stage rate must be positive.");
+    }
+    return new Stage(type, rate, durationNanos);
+  }
+
+  public List<Stage> getStages() {
+    return stages;
+  }
+
+  public double getInitialRate() {
+    return stages.get(0).rate();
+  }
+}
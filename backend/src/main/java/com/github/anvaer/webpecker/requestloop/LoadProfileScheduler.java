@@ -0,0 +1,110 @@
+package com.github.anvaer.webpecker.requestloop;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+public class LoadProfileScheduler {
+
+  private static final long TICK_MILLIS = 10;
+  private static final int WHEEL_SLOTS = 512;
+
+  private final TimerWheel wheel = new TimerWheel(TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS), WHEEL_SLOTS);
+  private final Map<Integer, Run> runs = new ConcurrentHashMap<>();
+  private final Consumer<Transition> listener;
+
+  public LoadProfileScheduler(ScheduledExecutorService scheduler, Consumer<Transition> listener) {
+    this.listener = listener;
+    scheduler.scheduleAtFixedRate(wheel::advance, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  public void start(int id, RequestLoopTask task, LoadProfile profile) {
+    Run run = new Run(id, task, profile.getStages());
+    Run previous = runs.put(id, run);
+    if (previous != null) {
+      previous.cancel();
+    }
+    run.enter(0);
+  }
+
+  public void cancel(int id) {
+    Run run = runs.remove(id);
+    if (run != null) {
+      run.cancel();
+    }
+  }
+
+  public void cancelAll() {
+    runs.keySet().forEach(this::cancel);
+  }
+
+  public int getActive() {
+    return runs.size();
+  }
+
+  private static double perSecond(long count, long elapsedNanos) {
+    return elapsedNanos > 0 ? count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos : 0;
+  }
+
+  private class Run {
+
+    private final int id;
+    private final RequestLoopTask task;
+    private final List<LoadProfile.Stage> stages;
+    private final long startNanos = System.nanoTime();
+    private int stage = -1;
+    private long stageStartNanos;
+    private long stageStartCompleted;
+    private TimerWheel.Timeout timeout;
+    private boolean cancelled;
+
+    private Run(int id, RequestLoopTask task, List<LoadProfile.Stage> stages) {
+      this.id = id;
+      this.task = task;
+      this.stages = stages;
+    }
+
+    synchronized void enter(int next) {
+      if (cancelled) {
+        return;
+      }
+      if (task.isFinished()) {
+        runs.remove(id, this);
+        return;
+      }
+      long now = System.nanoTime();
+      long completed = task.getCompleted();
+      double previousRate = stage < 0 ? 0 : stages.get(stage).rate();
+      double achievedRate = stage < 0 ? 0 : perSecond(completed - stageStartCompleted, now - stageStartNanos);
+      if (next >= stages.size()) {
+        listener.accept(new Transition(id, next, stages.size(), "done", previousRate, 0, achievedRate,
+            completed, task.getErrors(), TimeUnit.NANOSECONDS.toMillis(now - startNanos)));
+        runs.remove(id, this);
+        task.stop();
+        return;
+      }
+      LoadProfile.Stage target = stages.get(next);
+      task.setRate(target.rate());
+      listener.accept(new Transition(id, next, stages.size(), target.type().name().toLowerCase(), previousRate,
+          target.rate(), achievedRate, completed, task.getErrors(), TimeUnit.NANOSECONDS.toMillis(now - startNanos)));
+      stage = next;
+      stageStartNanos = now;
+      stageStartCompleted = completed;
+      timeout = wheel.schedule(() -> enter(next + 1), target.durationNanos());
+    }
+
+    synchronized void cancel() {
+      cancelled = true;
+      if (timeout != null) {
+        timeout.cancel();
+      }
+    }
+  }
+
+  public record Transition(int id, int stage, int stages, String type, double previousRate, double rate,
+      double achievedRate, long completed, long errors, long elapsedMillis) {
+  }
+}
@@ -4,21 +4,54 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.SocketTimeoutException;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
 
+import org.HdrHistogram.Histogram;
 import org.springframework.web.socket.WebSocketSession;
 
+import com.github.anvaer.webpecker.httpclient.BodyDrainer;
+import com.github.anvaer.webpecker.httpclient.ConnectionProfile;
 import com.github.anvaer.webpecker.httpclient.HttpClient;
+import com.github.anvaer.webpecker.httpclient.HttpProtocol;
+import com.github.anvaer.webpecker.httpclient.RequestTag;
+import com.github.anvaer.webpecker.httpclient.RequestTemplate;
+import com.github.anvaer.webpecker.recorder.RunLog;
+import com.github.anvaer.webpecker.stats.CallTimings;
+import com.github.anvaer.webpecker.stats.ConnectionStats;
+import com.github.anvaer.webpecker.stats.LatencySnapshot;
+import com.github.anvaer.webpecker.stats.LatencyStats;
+import com.github.anvaer.webpecker.websocket.EventRecords;
 import com.github.anvaer.webpecker.websocket.WebSocketEventPublisher;
 
 import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Request;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 public class RequestLoopTask implements Callable<Void> {
 
+  private static final long LATE_SEND_TOLERANCE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+  private static final long SPIN_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
   private final Integer id;
-  private long delay;
+  private volatile long delay;
+  private volatile double rate;
+  private volatile long ratePeriodNanos;
   private int currentIteration;
   private final int repeat;
   private final String url;
@@ -27,9 +60,43 @@ public class RequestLoopTask implements Callable<Void> {
   private final HttpClient httpClient;
   private final WebSocketEventPublisher publisher;
 
+  private final LatencyStats latencyStats = new LatencyStats();
+  private final ConnectionStats connectionStats = new ConnectionStats();
+  private ConnectionProfile connectionProfile = new ConnectionProfile();
+  private RequestTemplate template;
+  private Supplier<RunLog> runLogFactory;
+  private volatile RunLog runLog;
+  private BodyMode bodyMode = BodyMode.DISCARD;
+  private final ConcurrentLinkedQueue<BodyDrainer> drainers = new ConcurrentLinkedQueue<>();
+  private final AtomicLong referenceChecksum = new AtomicLong(-1);
+
   private final AtomicBoolean cancelled = new AtomicBoolean(false);
+  private volatile boolean stopped;
+  private volatile boolean paused;
+  private final Object pauseLock = new Object();
+  private Runnable parkedIteration;
+  private volatile Thread runner;
   private volatile Call call;
 
+  private final CompletableFuture<Void> completion = new CompletableFuture<>();
+  private final Set<Call> inFlight = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger completedIterations = new AtomicInteger();
+  private final LongAdder completed = new LongAdder();
+  private ScheduledExecutorService scheduler;
+  private volatile ScheduledFuture<?> pendingIteration;
+
+  private long nextSendNanos;
+  private long schedulePeriodNanos;
+  private long nextIntendedNanos;
+  private int priority;
+  private int weight = 1;
+  private FairScheduler.Lane lane;
+  private IntSupplier queuePosition;
+  private final long submittedNanos = System.nanoTime();
+  private volatile long startedNanos;
+  private volatile long lateSends;
+  private volatile long maxSendLagNanos;
+
   public RequestLoopTask(
       Integer id,
       long delay,
@@ -51,31 +118,58 @@ public class RequestLoopTask implements Callable<Void> {
 
   @Override
   public Void call() {
+    runner = Thread.currentThread();
+    try {
+      return runLoop();
+    } finally {
+      runner = null;
+    }
+  }
+
+  private Void runLoop() {
+    openRunLog();
+    startedNanos = System.nanoTime();
+    nextIntendedNanos = startedNanos;
     updateState("running");
-    while (currentIteration < repeat) {
+    nextSendNanos = System.nanoTime();
+    schedulePeriodNanos = ratePeriodNanos;
+    while (currentIteration < repeat && !stopped) {
       if (Thread.currentThread().isInterrupted()) {
         updateState("cancelled");
         break;
       }
+      if (paused && !awaitResume()) {
+        updateState("cancelled");
+        return null;
+      }
+      long intendedNanos = nextIntendedNanos;
+      long lagNanos;
+      if (isRateMode()) {
+        lagNanos = awaitNextSend();
+        if (lagNanos < 0 && paused && !cancelled.get()) {
+          continue;
+        }
+        if (lagNanos < 0) {
+          updateState(cancelled.get() ? "cancelled" : "done");
+          return null;
+        }
+        intendedNanos = nextSendNanos - schedulePeriodNanos;
+      } else {
+        lagNanos = closedLoopLag();
+      }
       try {
-        currentIteration++;
-        call = httpClient.getRequest(url, "\"id\":%d,\"iteration\":%d".formatted(id, currentIteration));
-        Response resp = call.execute();
-        resp.close();
-        registerIterationResult(String.valueOf(resp.code()));
+        Response resp = nextCall().execute();
+        registerResponse(currentIteration, resp, intendedNanos, lagNanos);
       } catch (IOException e) {
         if (cancelled.get()) {
           updateState("cancelled");
           return null;
-        } else if (e instanceof SocketTimeoutException) {
-          registerIterationResult("timeout:connect/read");
-        } else if (e instanceof InterruptedIOException) {
-          registerIterationResult("timeout");
-        } else if (e instanceof IOException) {
-          registerIterationResult("network error");
         }
+        registerFailure(currentIteration, e, intendedNanos, lagNanos, call);
+      } catch (IllegalArgumentException e) {
+        registerInvalidRequest(currentIteration, intendedNanos, lagNanos);
       }
-      if (!cancelled.get() && !Thread.currentThread().isInterrupted() && delay > 0) {
+      if (!isRateMode() && !cancelled.get() && !Thread.currentThread().isInterrupted() && delay > 0) {
         try {
           Thread.sleep(delay);
         } catch (InterruptedException e) {
@@ -89,26 +183,533 @@ public class RequestLoopTask implements Callable<Void> {
     return null;
   }
 
+  private long awaitNextSend() {
+    long remaining;
+    while ((remaining = retimeNextSend() - System.nanoTime()) > 0) {
+      if (remaining > SPIN_THRESHOLD_NANOS) {
+        LockSupport.parkNanos(remaining - SPIN_THRESHOLD_NANOS);
+      } else {
+        Thread.onSpinWait();
+      }
+      if (Thread.currentThread().isInterrupted() || cancelled.get() || stopped || paused) {
+        return -1;
+      }
+    }
+    long intended = nextSendNanos;
+    nextSendNanos = intended + schedulePeriodNanos;
+    return recordSendLag(System.nanoTime() - intended);
+  }
+
+  private long retimeNextSend() {
+    long period = ratePeriodNanos;
+    if (period != schedulePeriodNanos) {
+      nextSendNanos += period - schedulePeriodNanos;
+      schedulePeriodNanos = period;
+    }
+    return nextSendNanos;
+  }
+
+  private boolean awaitResume() {
+    synchronized (pauseLock) {
+      while (paused && !cancelled.get()) {
+        try {
+          pauseLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+    }
+    nextSendNanos = System.nanoTime();
+    nextIntendedNanos = nextSendNanos;
+    return !cancelled.get();
+  }
+
+  private boolean parkIfPaused(Runnable iteration) {
+    synchronized (pauseLock) {
+      if (!paused) {
+        return false;
+      }
+      parkedIteration = iteration;
+      return true;
+    }
+  }
+
+  private long recordSendLag(long lagNanos) {
+    if (lagNanos > LATE_SEND_TOLERANCE_NANOS) {
+      lateSends++;
+      if (lagNanos > maxSendLagNanos) {
+        maxSendLagNanos = lagNanos;
+      }
+    }
+    return lagNanos;
+  }
+
+  private long closedLoopLag() {
+    return Math.max(0, System.nanoTime() - nextIntendedNanos);
+  }
+
+  public CompletableFuture<Void> start(ScheduledExecutorService scheduler) {
+    this.scheduler = scheduler;
+    openRunLog();
+    startedNanos = System.nanoTime();
+    nextIntendedNanos = startedNanos;
+    updateState("running");
+    if (isRateMode()) {
+      nextSendNanos = System.nanoTime();
+      sendAtRate();
+    } else {
+      nextAsyncIteration();
+    }
+    return completion;
+  }
+
+  private void nextAsyncIteration() {
+    pendingIteration = null;
+    if (!cancelled.get() && parkIfPaused(this::nextAsyncIteration)) {
+      return;
+    }
+    if (cancelled.get()) {
+      finish("cancelled");
+    } else if (currentIteration >= repeat || stopped) {
+      finish("done");
+    } else if (lane != null) {
+      lane.submit(this::sendGrantedIteration);
+    } else {
+      sendAsync(nextIntendedNanos, closedLoopLag());
+    }
+  }
+
+  private void sendGrantedIteration() {
+    if (cancelled.get() || stopped) {
+      lane.release();
+      finish(cancelled.get() ? "cancelled" : "done");
+    } else {
+      sendAsync(nextIntendedNanos, closedLoopLag());
+    }
+  }
+
+  private void sendAtRate() {
+    pendingIteration = null;
+    if (!cancelled.get() && !stopped && parkIfPaused(this::sendAtRate)) {
+      return;
+    }
+    if (cancelled.get() || stopped) {
+      if (inFlight.isEmpty())
+        finish(cancelled.get() ? "cancelled" : "done");
+      return;
+    }
+    long intendedNanos = nextSendNanos;
+    long lagNanos = recordSendLag(System.nanoTime() - intendedNanos);
+    nextSendNanos += ratePeriodNanos;
+    sendAsync(intendedNanos, lagNanos);
+    if (currentIteration < repeat) {
+      pendingIteration = scheduler.schedule(
+          this::sendAtRate, nextSendNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private void sendAsync(long intendedNanos, long lagNanos) {
+    Call next;
+    try {
+      next = nextCall();
+    } catch (IllegalArgumentException e) {
+      registerInvalidRequest(currentIteration, intendedNanos, lagNanos);
+      // completed off this stack so a run of invalid iterations cannot recurse
+      scheduler.execute(() -> onIterationComplete(null));
+      return;
+    }
+    enqueue(next, intendedNanos, lagNanos);
+  }
+
+  private void enqueue(Call call, long intendedNanos, long lagNanos) {
+    inFlight.add(call);
+    call.enqueue(new IterationCallback(currentIteration, intendedNanos, lagNanos));
+  }
+
+  private void onIterationComplete(Call call) {
+    if (call != null) {
+      inFlight.remove(call);
+    }
+    if (lane != null) {
+      lane.release();
+    }
+    if (cancelled.get()) {
+      if (inFlight.isEmpty())
+        finish("cancelled");
+    } else if (isRateMode()) {
+      if (completedIterations.incrementAndGet() >= repeat || stopped && inFlight.isEmpty()) {
+        finish("done");
+      }
+    } else if (delay > 0) {
+      pendingIteration = scheduler.schedule(this::nextAsyncIteration, delay, TimeUnit.MILLISECONDS);
+    } else {
+      nextAsyncIteration();
+    }
+  }
+
+  private void finish(String state) {
+    if (!completion.isDone()) {
+      if (lane != null) {
+        lane.close();
+      }
+      updateState(state);
+      completion.complete(null);
+    }
+  }
+
+  private Call nextCall() {
+    currentIteration++;
+    RequestTag tag = new RequestTag(id, currentIteration, latencyStats, connectionStats,
+        runLog == null ? null : new CallTimings());
+    call = template == null
+        ? httpClient.getRequest(url, tag, connectionProfile)
+        : httpClient.getRequest(template, tag, connectionProfile);
+    return call;
+  }
+
+  private void registerResponse(int iteration, Response resp, long intendedNanos, long lagNanos)
+      throws IOException {
+    CallTimings timings = timingsOf(resp.request());
+    try (resp) {
+      ResponseBody body = resp.body();
+      if (bodyMode != BodyMode.DISCARD && body != null) {
+        readBody(body, timings);
+      }
+    }
+    registerIterationResult(iteration, String.valueOf(resp.code()), intendedNanos, lagNanos, timings);
+  }
+
+  private CallTimings timingsOf(Request request) {
+    if (runLog == null || request == null) {
+      return null;
+    }
+    RequestTag tag = request.tag(RequestTag.class);
+    return tag == null ? null : tag.timings();
+  }
+
+  private void readBody(ResponseBody body, CallTimings timings) throws IOException {
+    BodyDrainer drainer = drainers.poll();
+    if (drainer == null) {
+      drainer = new BodyDrainer(bodyMode == BodyMode.CRC32);
+    }
+    try {
+      drainer.drain(body);
+      latencyStats.recordBody(drainer.bytes(), drainer.nanos());
+      if (timings != null) {
+        timings.record(LatencyStats.Phase.BODY, drainer.nanos());
+      }
+      if (!isValidBody(drainer)) {
+        latencyStats.recordInvalidBody();
+      }
+    } finally {
+      drainers.offer(drainer);
+    }
+  }
+
+  private boolean isValidBody(BodyDrainer drainer) {
+    switch (bodyMode) {
+      case LENGTH:
+        return drainer.lengthMatches();
+      case CRC32:
+        long checksum = drainer.checksum();
+        return referenceChecksum.compareAndSet(-1, checksum) || referenceChecksum.get() == checksum;
+      default:
+        return true;
+    }
+  }
+
+  private void registerFailure(int iteration, IOException e, long intendedNanos, long lagNanos, Call failed) {
+    CallTimings timings = failed == null ? null : timingsOf(failed.request());
+    if (e instanceof SocketTimeoutException) {
+      registerIterationResult(iteration, "timeout:connect/read", intendedNanos, lagNanos, timings);
+    } else if (e instanceof InterruptedIOException) {
+      registerIterationResult(iteration, "timeout", intendedNanos, lagNanos, timings);
+    } else {
+      registerIterationResult(iteration, "network error", intendedNanos, lagNanos, timings);
+    }
+  }
+
+  private void registerInvalidRequest(int iteration, long intendedNanos, long lagNanos) {
+    latencyStats.recordError();
+    registerIterationResult(iteration, "network error", intendedNanos, lagNanos, null);
+  }
+
   private void updateState(String state) {
     this.state = state;
+    if (!"running".equals(state) && !"paused".equals(state)) {
+      connectionProfile.release();
+      if (runLog != null) {
+        runLog.finish(state);
+      }
+    }
     publisher.updateState(webSocketSession, id, this.state);
   }
 
-  private void registerIterationResult(String result) {
-    publisher.updateIteration(webSocketSession, id, currentIteration, result);
+  private void registerIterationResult(int iteration, String result, long intendedNanos, long lagNanos,
+      CallTimings timings) {
+    long completedNanos = System.nanoTime();
+    completed.increment();
+    latencyStats.recordCorrected(completedNanos - intendedNanos);
+    if (!isRateMode()) {
+      nextIntendedNanos = completedNanos + TimeUnit.MILLISECONDS.toNanos(delay);
+    }
+    if (runLog != null) {
+      runLog.append(iteration, EventRecords.resultCode(result), TimeUnit.NANOSECONDS.toMicros(lagNanos), timings);
+    }
+    if (isRateMode() && lagNanos > LATE_SEND_TOLERANCE_NANOS) {
+      publisher.updateIteration(webSocketSession, id, iteration, result,
+          TimeUnit.NANOSECONDS.toMicros(lagNanos));
+    } else {
+      publisher.updateIteration(webSocketSession, id, iteration, result);
+    }
+  }
+
+  boolean isRateMode() {
+    return ratePeriodNanos > 0;
   }
 
   public void setDelay(long delay) {
     this.delay = delay;
   }
 
+  public void setRate(double rate) {
+    long previousPeriodNanos = ratePeriodNanos;
+    this.rate = rate;
+    this.ratePeriodNanos = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+    if (previousPeriodNanos > ratePeriodNanos && ratePeriodNanos > 0) {
+      rescheduleSend(previousPeriodNanos - ratePeriodNanos);
+    }
+    wakeRunner();
+  }
+
+  private void wakeRunner() {
+    Thread loop = runner;
+    if (loop != null) {
+      LockSupport.unpark(loop);
+    }
+  }
+
+  public void pause() {
+    synchronized (pauseLock) {
+      if (paused || !isRunning()) {
+        return;
+      }
+      paused = true;
+      ScheduledFuture<?> pending = pendingIteration;
+      if (pending != null && pending.cancel(false)) {
+        parkedIteration = isRateMode() ? this::sendAtRate : this::nextAsyncIteration;
+      }
+    }
+    wakeRunner();
+    updateState("paused");
+  }
+
+  public void resume() {
+    Runnable parked;
+    synchronized (pauseLock) {
+      if (!paused) {
+        return;
+      }
+      paused = false;
+      parked = parkedIteration;
+      parkedIteration = null;
+      pauseLock.notifyAll();
+    }
+    updateState("running");
+    if (parked != null) {
+      nextSendNanos = System.nanoTime();
+      nextIntendedNanos = nextSendNanos;
+      scheduler.execute(parked);
+    }
+  }
+
+  public boolean isPaused() {
+    return paused;
+  }
+
+  private void rescheduleSend(long earlierByNanos) {
+    ScheduledFuture<?> pending = pendingIteration;
+    if (scheduler != null && pending != null && pending.cancel(false)) {
+      nextSendNanos -= earlierByNanos;
+      pendingIteration = scheduler.schedule(
+          this::sendAtRate, nextSendNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+  }
+
+  public void stop() {
+    stopped = true;
+    ScheduledFuture<?> pending = pendingIteration;
+    if (pending != null && pending.cancel(false) && inFlight.isEmpty())
+      finish("done");
+    Runnable parked;
+    synchronized (pauseLock) {
+      paused = false;
+      parked = parkedIteration;
+      parkedIteration = null;
+      pauseLock.notifyAll();
+    }
+    if (parked != null)
+      scheduler.execute(parked);
+    wakeRunner();
+  }
+
+  public void setBodyMode(BodyMode bodyMode, Long expectedCrc32) {
+    this.bodyMode = bodyMode;
+    if (expectedCrc32 != null) {
+      referenceChecksum.set(expectedCrc32);
+    }
+  }
+
+  public void setPriority(int priority, int weight) {
+    this.priority = priority;
+    this.weight = Math.max(1, weight);
+  }
+
+  public int getPriority() {
+    return priority;
+  }
+
+  public int getWeight() {
+    return weight;
+  }
+
+  void setLane(FairScheduler.Lane lane) {
+    this.lane = lane;
+  }
+
+  void setQueuePosition(IntSupplier queuePosition) {
+    this.queuePosition = queuePosition;
+  }
+
+  int getQueuePosition() {
+    if (lane != null) {
+      return lane.queuePosition();
+    }
+    return startedNanos != 0 || queuePosition == null ? 0 : queuePosition.getAsInt();
+  }
+
+  long getQueueWaitMillis() {
+    long waitNanos = lane != null
+        ? lane.waitNanos()
+        : (startedNanos == 0 ? System.nanoTime() : startedNanos) - submittedNanos;
+    return TimeUnit.NANOSECONDS.toMillis(waitNanos);
+  }
+
+  public void setRunLogFactory(Supplier<RunLog> runLogFactory) {
+    this.runLogFactory = runLogFactory;
+  }
+
+  // opened on start rather than submit so a run cancelled while queued leaves no active log behind
+  private void openRunLog() {
+    if (runLogFactory != null && runLog == null) {
+      runLog = runLogFactory.get();
+    }
+  }
+
+  public void setTemplate(RequestTemplate template) {
+    this.template = template;
+  }
+
+  public void setConnectionProfile(ConnectionProfile connectionProfile) {
+    this.connectionProfile = connectionProfile;
+  }
+
   public RequestLoopTaskState getState() {
-    return new RequestLoopTaskState(id, delay, currentIteration, repeat, url, state);
+    HttpProtocol protocol = connectionProfile.getProtocol();
+    return new RequestLoopTaskState(id, delay, currentIteration, repeat, url, state,
+        rate, lateSends, TimeUnit.NANOSECONDS.toMillis(maxSendLagNanos),
+        protocol == null ? null : protocol.name(), connectionProfile.getPoolSize(),
+        connectionProfile.isBypassDnsCache(),
+        connectionStats.getProtocol(), connectionStats.getOpened(), connectionStats.getReused(),
+        connectionProfile.getClientVersion(), bodyMode.name(), latencyStats.getBodyBytes(),
+        latencyStats.getInvalidBodies(), runLog == null ? null : runLog.getRunId(),
+        priority, weight, getQueuePosition(), getQueueWaitMillis());
+  }
+
+  public RequestLoopTaskSummary getSummary() {
+    return new RequestLoopTaskSummary(id, url, state, currentIteration, repeat);
+  }
+
+  public Histogram drainLatency() {
+    return latencyStats.drainInterval();
+  }
+
+  public long getErrors() {
+    return latencyStats.getErrors();
+  }
+
+  public boolean isRunning() {
+    return "running".equals(state);
+  }
+
+  public boolean isFinished() {
+    return "done".equals(state) || "cancelled".equals(state);
+  }
+
+  public long getCompleted() {
+    return completed.sum();
+  }
+
+  public int getIteration() {
+    return currentIteration;
+  }
+
+  public LatencySnapshot getLatencySnapshot() {
+    return latencyStats.snapshot(id);
   }
 
   public void cancelCall() {
     cancelled.set(true);
     if (call != null)
       call.cancel();
+    inFlight.forEach(Call::cancel);
+    if (lane != null && lane.withdraw()) {
+      finish("cancelled");
+    }
+    ScheduledFuture<?> pending = pendingIteration;
+    if (pending != null && pending.cancel(false) && inFlight.isEmpty())
+      finish("cancelled");
+    Runnable parked;
+    synchronized (pauseLock) {
+      parked = parkedIteration;
+      parkedIteration = null;
+      pauseLock.notifyAll();
+    }
+    if (parked != null && inFlight.isEmpty())
+      finish("cancelled");
+  }
+
+  private class IterationCallback implements Callback {
+
+    private final int iteration;
+    private final long intendedNanos;
+    private final long lagNanos;
+
+    IterationCallback(int iteration, long intendedNanos, long lagNanos) {
+      this.iteration = iteration;
+      this.intendedNanos = intendedNanos;
+      this.lagNanos = lagNanos;
+    }
+
+    @Override
+    public void onResponse(Call call, Response resp) {
+      try {
+        registerResponse(iteration, resp, intendedNanos, lagNanos);
+      } catch (IOException e) {
+        if (!cancelled.get()) {
+          registerFailure(iteration, e, intendedNanos, lagNanos, call);
+        }
+      }
+      onIterationComplete(call);
+    }
+
+    @Override
+    public void onFailure(Call call, IOException e) {
+      if (!cancelled.get()) {
+        registerFailure(iteration, e, intendedNanos, lagNanos, call);
+      }
+      onIterationComplete(call);
+    }
   }
 }
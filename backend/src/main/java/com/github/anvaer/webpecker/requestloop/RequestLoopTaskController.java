@@ -37,7 +37,6 @@ public class RequestLoopTaskController extends TextWebSocketHandler {
 
   @Override
   public void afterConnectionEstablished(WebSocketSession session) {
-    httpClient.addWebSocketSession(session);
     publisher.registerSession(session);
   }
 
@@ -60,12 +59,45 @@ public class RequestLoopTaskController extends TextWebSocketHandler {
         taskManager.restoreState(session);
         taskManager.restoreSettings(session);
         break;
+      case "resync":
+        taskManager.resync(session, req.getEpoch(), req.getLastSeq());
+        taskManager.restoreSettings(session);
+        break;
       case "send-request":
         taskManager.submitRequest(req, session);
         break;
       case "cancel-request":
         taskManager.cancelRequest(req.getId());
         break;
+      case "pause-request":
+        taskManager.pauseRequest(req.getId());
+        break;
+      case "resume-request":
+        taskManager.resumeRequest(req.getId());
+        break;
+      case "update-task":
+        taskManager.updateTask(req);
+        break;
+      case "send-batch":
+        taskManager.submitBatch(req, session);
+        break;
+      case "cancel-batch":
+        taskManager.cancelBatch(req.getId());
+        break;
+      case "pause-batch":
+        taskManager.pauseBatch(req.getId());
+        break;
+      case "resume-batch":
+        taskManager.resumeBatch(req.getId());
+        break;
+      case "subscribe":
+        publisher.subscribe(session, req.getIds());
+        break;
+      case "progress-mode":
+        if (req.getId() != null) {
+          publisher.setRawProgress(req.getId(), Boolean.TRUE.equals(req.getRawProgress()));
+        }
+        break;
       case "update-config":
         taskManager.updateConfig(req);
         break;
@@ -78,7 +110,6 @@ public class RequestLoopTaskController extends TextWebSocketHandler {
   public void afterConnectionClosed(
       WebSocketSession session,
       CloseStatus status) {
-    httpClient.removeWebSocketSession();
     publisher.clearSession(session);
   }
 
@@ -1,7 +1,15 @@
 package com.github.anvaer.webpecker.requestloop;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,33 +17,64 @@ import org.springframework.web.socket.WebSocketSession;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.anvaer.webpecker.cluster.ClusterCoordinator;
 import com.github.anvaer.webpecker.httpclient.HttpClient;
+import com.github.anvaer.webpecker.httpclient.RequestTemplate;
+import com.github.anvaer.webpecker.recorder.RunRecorder;
+import com.github.anvaer.webpecker.stats.LatencySnapshot;
+import com.github.anvaer.webpecker.websocket.OverflowPolicy;
 import com.github.anvaer.webpecker.websocket.WebSocketEventPublisher;
 import com.github.anvaer.webpecker.websocket.WebSocketRequest;
 
 import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import jakarta.annotation.PreDestroy;
 
 @Component
-public class RequestLoopTaskManager {
+public class RequestLoopTaskManager implements MeterBinder {
 
   private static final Logger log = LoggerFactory.getLogger(RequestLoopTaskManager.class);
+  private static final long LATENCY_SNAPSHOT_INTERVAL_MS = 1000;
+  private static final long CONCURRENCY_INTERVAL_MS = 1000;
 
-  private int maxConcurrent = 3;
+  private volatile int maxConcurrent = 3;
   private long delay = 100;
   private long timeout = 600;
   private int repeat = 1000;
+  private volatile ExecutionMode executionMode = ExecutionMode.PLATFORM;
+  private volatile ConcurrencyController concurrencyController;
+  private volatile String lastConcurrencyReason;
   private final ThreadPoolExecutor executor;
+  private final ExecutorService virtualExecutor;
+  private final ScheduledThreadPoolExecutor scheduler;
+  private final ScheduledThreadPoolExecutor housekeeping;
+  private final Queue<PendingAsyncTask> asyncQueue = new ConcurrentLinkedQueue<>();
+  private final ResizableSemaphore permits;
+  private final FairScheduler fairScheduler;
+  private final LoadProfileScheduler profileScheduler;
   private final ConcurrentHashMap<Integer, Future<?>> futures = new ConcurrentHashMap<>();
   private final ConcurrentHashMap<Integer, RequestLoopTask> tasks = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Integer, BatchTask> batches = new ConcurrentHashMap<>();
   private final HttpClient httpClient;
   private final WebSocketEventPublisher publisher;
   private final ObjectMapper mapper;
+  private final RunRecorder recorder;
+  private final ClusterCoordinator coordinator;
+  private final Map<Integer, List<Meter>> taskMeters = new ConcurrentHashMap<>();
+  private volatile MeterRegistry meterRegistry;
 
-  public RequestLoopTaskManager(HttpClient httpClient, WebSocketEventPublisher publisher, ObjectMapper mapper) {
+  public RequestLoopTaskManager(HttpClient httpClient, WebSocketEventPublisher publisher, ObjectMapper mapper,
+      RunRecorder recorder, ClusterCoordinator coordinator) {
     this.httpClient = httpClient;
     this.publisher = publisher;
     this.mapper = mapper;
+    this.recorder = recorder;
+    this.coordinator = coordinator;
     this.executor = new ThreadPoolExecutor(
         maxConcurrent,
         maxConcurrent,
@@ -44,22 +83,249 @@ public class RequestLoopTaskManager {
         new LinkedBlockingQueue<>(),
         new ThreadPoolExecutor.AbortPolicy());
     executor.allowCoreThreadTimeOut(true);
+    this.virtualExecutor = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("request-loop-", 0).factory());
+    this.scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread t = new Thread(r, "request-loop-scheduler");
+      t.setDaemon(true);
+      return t;
+    });
+    scheduler.setRemoveOnCancelPolicy(true);
+    // snapshots, concurrency control and the profile wheel stay off the send thread
+    this.housekeeping = new ScheduledThreadPoolExecutor(1, r -> {
+      Thread t = new Thread(r, "request-loop-housekeeping");
+      t.setDaemon(true);
+      return t;
+    });
+    housekeeping.scheduleAtFixedRate(
+        this::publishLatencySnapshots,
+        LATENCY_SNAPSHOT_INTERVAL_MS,
+        LATENCY_SNAPSHOT_INTERVAL_MS,
+        TimeUnit.MILLISECONDS);
+    housekeeping.scheduleAtFixedRate(
+        this::adjustConcurrency,
+        CONCURRENCY_INTERVAL_MS,
+        CONCURRENCY_INTERVAL_MS,
+        TimeUnit.MILLISECONDS);
+    this.permits = new ResizableSemaphore(maxConcurrent);
+    this.fairScheduler = new FairScheduler(maxConcurrent);
+    this.profileScheduler = new LoadProfileScheduler(housekeeping, this::publishProfileTransition);
   }
 
   public void submitRequest(WebSocketRequest req, WebSocketSession session) {
+    LoadProfile profile = null;
+    if (req.getProfile() != null) {
+      try {
+        profile = LoadProfile.compile(req.getProfile());
+      } catch (IllegalArgumentException e) {
+        log.warn("Invalid load profile for task {}: {}", req.getId(), e.getMessage());
+        return;
+      }
+    }
+    if (profile == null && coordinator.isEnabled() && isDistributed(req)
+        && coordinator.submit(req.getId(), req.getUrl(), Optional.ofNullable(req.getRepeat()).orElse(1),
+            Optional.ofNullable(req.getRate()).orElse(0.0), delay, session)) {
+      return;
+    }
     RequestLoopTask task = new RequestLoopTask(
         req.getId(),
         delay,
-        req.getRepeat(),
+        profile != null && req.getRepeat() == null ? Integer.valueOf(Integer.MAX_VALUE) : req.getRepeat(),
         req.getUrl(),
         session,
         httpClient,
         publisher);
+    if (profile != null) {
+      task.setRate(profile.getInitialRate());
+    } else if (req.getRate() != null) {
+      task.setRate(req.getRate());
+    }
+    if (req.getPriority() != null || req.getWeight() != null) {
+      task.setPriority(Optional.ofNullable(req.getPriority()).orElse(0),
+          Optional.ofNullable(req.getWeight()).orElse(1));
+    }
+    if (req.getBodyMode() != null) {
+      try {
+        task.setBodyMode(BodyMode.of(req.getBodyMode()), req.getExpectedCrc32());
+      } catch (IllegalArgumentException e) {
+        log.warn("Unknown body mode: {}", req.getBodyMode());
+      }
+    }
+    if (req.getProtocol() != null || req.getConnectionPoolSize() != null
+        || Boolean.TRUE.equals(req.getBypassDnsCache())) {
+      try {
+        task.setConnectionProfile(httpClient.newProfile(req.getProtocol(), req.getConnectionPoolSize(),
+            Boolean.TRUE.equals(req.getBypassDnsCache())));
+      } catch (IllegalArgumentException e) {
+        log.warn("Unknown protocol: {}", req.getProtocol());
+      }
+    }
+    if (isTemplated(req)) {
+      try {
+        task.setTemplate(RequestTemplate.compile(
+            req.getMethod(), req.getUrl(), req.getHeaders(), req.getBody(), req.getCsv()));
+      } catch (IllegalArgumentException e) {
+        log.warn("Invalid request template for task {}: {}", req.getId(), e.getMessage());
+        return;
+      }
+    }
+    publisher.startProgress(req.getId(), Boolean.TRUE.equals(req.getRawProgress()));
+    int id = req.getId();
+    String url = req.getUrl();
+    task.setRunLogFactory(() -> recorder.start(id, url));
     if (req.getRepeat() != null) {
       repeat = req.getRepeat();
     }
+    if (executionMode == ExecutionMode.FAIR && task.isRateMode()) {
+      log.warn("Task {} has a fixed rate; it bypasses the fair-share lanes.", req.getId());
+    }
     tasks.put(req.getId(), task);
-    futures.put(req.getId(), executor.submit(task));
+    registerTaskMeters(req.getId(), task);
+    futures.put(req.getId(), submit(task));
+    if (profile != null) {
+      profileScheduler.start(req.getId(), task, profile);
+    }
+  }
+
+  public void submitBatch(WebSocketRequest req, WebSocketSession session) {
+    List<String> urls = BatchTask.parseUrls(req.getUrls(), req.getUrlFile());
+    if (req.getId() == null || urls.isEmpty()) {
+      log.warn("Ignoring batch {} without URLs.", req.getId());
+      return;
+    }
+    BatchTask batch = new BatchTask(req.getId(), urls, req.getRepeat(), session, httpClient, publisher);
+    BatchTask previous = batches.put(req.getId(), batch);
+    if (previous != null) {
+      previous.cancel();
+    }
+    publisher.startProgress(req.getId(), false);
+    batch.start(virtualExecutor, Optional.ofNullable(req.getWorkers()).orElse(maxConcurrent));
+  }
+
+  public void cancelBatch(Integer id) {
+    if (id == null) {
+      batches.keySet().forEach(this::cancelBatch);
+      return;
+    }
+    BatchTask batch = batches.remove(id);
+    if (batch != null) {
+      batch.cancel();
+      publisher.clearProgress(id);
+    }
+  }
+
+  public void pauseBatch(Integer id) {
+    BatchTask batch = id == null ? null : batches.get(id);
+    if (batch != null) {
+      batch.pause();
+    }
+  }
+
+  public void resumeBatch(Integer id) {
+    BatchTask batch = id == null ? null : batches.get(id);
+    if (batch != null) {
+      batch.resume();
+    }
+  }
+
+  private static boolean isDistributed(WebSocketRequest req) {
+    if (!Boolean.TRUE.equals(req.getDistributed())) {
+      return false;
+    }
+    if (isTemplated(req) || req.getBodyMode() != null || req.getProtocol() != null
+        || req.getConnectionPoolSize() != null || req.getBypassDnsCache() != null
+        || req.getPriority() != null || req.getWeight() != null || req.getRawProgress() != null) {
+      log.warn("Task {} uses settings cluster workers do not support; running it locally.", req.getId());
+      return false;
+    }
+    return true;
+  }
+
+  private static boolean isTemplated(WebSocketRequest req) {
+    return req.getMethod() != null || req.getHeaders() != null || req.getBody() != null
+        || req.getCsv() != null || (req.getUrl() != null && req.getUrl().contains("${"));
+  }
+
+  private Future<?> submit(RequestLoopTask task) {
+    switch (executionMode) {
+      case VIRTUAL:
+        return virtualExecutor.submit(() -> {
+          try {
+            permits.acquire();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+          }
+          try {
+            return task.call();
+          } finally {
+            permits.release();
+          }
+        });
+      case ASYNC:
+        CompletableFuture<Void> handle = new CompletableFuture<>();
+        asyncQueue.add(new PendingAsyncTask(task, handle));
+        task.setQueuePosition(() -> positionOf(asyncQueue, p -> p.task() == task));
+        startQueuedAsyncTasks();
+        return handle;
+      case FAIR:
+        // a lane holds one pending iteration at a time, which an open-loop send schedule cannot wait on
+        if (!task.isRateMode()) {
+          task.setLane(fairScheduler.register(task.getPriority(), task.getWeight()));
+        }
+        // cancelling the handle must not complete the task's own completion, which gates lane and run cleanup
+        CompletableFuture<Void> fairHandle = new CompletableFuture<>();
+        task.start(scheduler).whenComplete((v, e) -> {
+          if (e != null) {
+            fairHandle.completeExceptionally(e);
+          } else {
+            fairHandle.complete(null);
+          }
+        });
+        return fairHandle;
+      default:
+        Future<?> future = executor.submit(task);
+        task.setQueuePosition(() -> positionOf(executor.getQueue(), r -> r == future));
+        return future;
+    }
+  }
+
+  private static <T> int positionOf(Iterable<T> queue, Predicate<T> match) {
+    int position = 1;
+    for (T item : queue) {
+      if (match.test(item)) {
+        return position;
+      }
+      position++;
+    }
+    return 0;
+  }
+
+  private void startQueuedAsyncTasks() {
+    while (!asyncQueue.isEmpty() && permits.tryAcquire()) {
+      PendingAsyncTask pending = asyncQueue.poll();
+      if (pending == null || pending.handle().isDone()) {
+        permits.release();
+        continue;
+      }
+      CompletableFuture<Void> started;
+      try {
+        started = pending.task().start(scheduler);
+      } catch (RuntimeException e) {
+        log.warn("Failed to start queued async task.", e);
+        permits.release();
+        pending.handle().completeExceptionally(e);
+        continue;
+      }
+      started.whenComplete((v, e) -> {
+        permits.release();
+        pending.handle().complete(null);
+        startQueuedAsyncTasks();
+      });
+    }
+  }
+
+  private record PendingAsyncTask(RequestLoopTask task, CompletableFuture<Void> handle) {
   }
 
   public void restoreState(WebSocketSession session) {
@@ -72,9 +338,101 @@ public class RequestLoopTaskManager {
     }
   }
 
+  public void resync(WebSocketSession session, Long epoch, Long lastSeq) {
+    publisher.resync(session, epoch, lastSeq, this::taskSummaries);
+  }
+
+  private String taskSummaries() {
+    List<RequestLoopTaskSummary> summaries = tasks.values().stream().map(RequestLoopTask::getSummary).toList();
+    try {
+      return mapper.writeValueAsString(summaries);
+    } catch (JsonProcessingException e) {
+      log.warn("Failed to serialize task summaries.", e);
+      return "[]";
+    }
+  }
+
+  private void publishLatencySnapshots() {
+    List<BatchTask> finished = publishBatchSummaries();
+    List<LatencySnapshot> snapshots = Stream.of(tasks.values().stream().map(RequestLoopTask::getLatencySnapshot),
+        batches.values().stream().map(BatchTask::getLatencySnapshot),
+        finished.stream().map(BatchTask::getLatencySnapshot))
+        .flatMap(s -> s)
+        .filter(Objects::nonNull)
+        .toList();
+    if (snapshots.isEmpty()) {
+      return;
+    }
+    try {
+      publisher.updateLatency(mapper.writeValueAsString(Map.of("latency", snapshots)));
+    } catch (JsonProcessingException e) {
+      log.warn("Failed to serialize latency snapshots.", e);
+    }
+  }
+
+  private List<BatchTask> publishBatchSummaries() {
+    List<BatchTask.Summary> summaries = new ArrayList<>();
+    List<BatchTask> finished = new ArrayList<>();
+    batches.forEach((id, batch) -> {
+      // read before needsReport: a batch finishing mid-pass keeps its final report for the next pass
+      boolean done = batch.isFinished();
+      if (batch.needsReport()) {
+        summaries.add(batch.getSummary());
+      }
+      if (done && batches.remove(id, batch)) {
+        finished.add(batch);
+      }
+    });
+    if (summaries.isEmpty()) {
+      return finished;
+    }
+    try {
+      publisher.publishEvent(mapper.writeValueAsString(Map.of("batches", summaries)));
+    } catch (JsonProcessingException e) {
+      log.warn("Failed to serialize batch summaries.", e);
+    }
+    return finished;
+  }
+
+  private void publishProfileTransition(LoadProfileScheduler.Transition transition) {
+    try {
+      publisher.publishEvent(mapper.writeValueAsString(Map.of("profile", transition)));
+    } catch (JsonProcessingException e) {
+      log.warn("Failed to serialize profile transition.", e);
+    }
+  }
+
+  private void adjustConcurrency() {
+    ConcurrencyController controller = concurrencyController;
+    // other modes gate whole loops, so a lower limit sheds no load from loops already running
+    if (controller == null || executionMode != ExecutionMode.FAIR) {
+      return;
+    }
+    try {
+      ConcurrencyController.Decision decision = controller.next(maxConcurrent, fairScheduler.inUse(),
+          httpClient.getLoadSignal().sample());
+      boolean resized = decision.limit() != decision.previous();
+      if (resized) {
+        resizeConcurrency(decision.limit());
+      }
+      if (resized || !decision.reason().equals(lastConcurrencyReason)) {
+        lastConcurrencyReason = decision.reason();
+        publisher.publishEvent(mapper.writeValueAsString(Map.of("concurrency", decision)));
+      }
+    } catch (JsonProcessingException e) {
+      log.warn("Failed to serialize concurrency decision.", e);
+    } catch (Exception e) {
+      log.warn("Adaptive concurrency update failed.", e);
+    }
+  }
+
   public void restoreSettings(WebSocketSession session) {
-    String configs = "{\"delay\":%d,\"maxConcurrent\":%d,\"timeout\":%d,\"repeat\":%d}"
-        .formatted(delay, maxConcurrent, timeout, repeat);
+    String configs = ("{\"delay\":%d,\"maxConcurrent\":%d,\"timeout\":%d,\"repeat\":%d,"
+        + "\"executionMode\":\"%s\",\"callEvents\":%b,\"clientVersion\":%d,\"clientRebuilds\":%d,"
+        + "\"adaptiveConcurrency\":%b}")
+        .formatted(delay, maxConcurrent, timeout, repeat, executionMode.name().toLowerCase(),
+            publisher.isCallEventsEnabled(), httpClient.getClientVersion(), httpClient.getClientRebuilds(),
+            concurrencyController != null);
     publisher.restoreState(session, configs);
   }
 
@@ -82,15 +440,63 @@ public class RequestLoopTaskManager {
     if (id == null) {
       tasks.values().forEach(t -> t.cancelCall());
       futures.values().forEach(f -> f.cancel(true));
+      tasks.keySet().forEach(publisher::clearProgress);
+      coordinator.cancelAll();
+      profileScheduler.cancelAll();
+      tasks.keySet().forEach(this::removeTaskMeters);
       tasks.clear();
       futures.clear();
     } else {
       RequestLoopTask task = tasks.remove(id);
+      removeTaskMeters(id);
       Future<?> future = futures.remove(id);
       if (task != null)
         task.cancelCall();
       if (future != null)
         future.cancel(true);
+      publisher.clearProgress(id);
+      coordinator.cancel(id);
+      profileScheduler.cancel(id);
+    }
+  }
+
+  public void pauseRequest(Integer id) {
+    forTasks(id, RequestLoopTask::pause);
+  }
+
+  public void resumeRequest(Integer id) {
+    forTasks(id, RequestLoopTask::resume);
+  }
+
+  private void forTasks(Integer id, Consumer<RequestLoopTask> action) {
+    if (id == null) {
+      tasks.values().forEach(action);
+    } else {
+      RequestLoopTask task = tasks.get(id);
+      if (task != null)
+        action.accept(task);
+      else if (coordinator.hasTask(id))
+        log.warn("Task {} runs on cluster workers and cannot be paused or resumed.", id);
+    }
+  }
+
+  public void updateTask(WebSocketRequest req) {
+    RequestLoopTask task = req.getId() == null ? null : tasks.get(req.getId());
+    if (task == null) {
+      if (req.getId() != null && coordinator.hasTask(req.getId())) {
+        log.warn("Task {} runs on cluster workers and cannot be updated.", req.getId());
+      }
+      return;
+    }
+    if (req.getDelay() != null) {
+      task.setDelay(req.getDelay());
+    }
+    if (req.getRate() != null) {
+      if (task.isRateMode() && req.getRate() > 0) {
+        task.setRate(req.getRate());
+      } else {
+        log.warn("Cannot change rate of task {} to {}.", req.getId(), req.getRate());
+      }
     }
   }
 
@@ -101,15 +507,46 @@ public class RequestLoopTaskManager {
     }
 
     if (req.getMaxConcurrent() != null) {
-      int newMax = req.getMaxConcurrent();
-      if (this.maxConcurrent < newMax) {
-        executor.setMaximumPoolSize(newMax);
-        executor.setCorePoolSize(newMax);
-      } else if (this.maxConcurrent > newMax) {
-        executor.setCorePoolSize(newMax);
-        executor.setMaximumPoolSize(newMax);
+      resizeConcurrency(req.getMaxConcurrent());
+    }
+
+    if (req.getAdaptiveConcurrency() != null) {
+      if (req.getAdaptiveConcurrency()) {
+        httpClient.getLoadSignal().sample();
+        lastConcurrencyReason = null;
+        concurrencyController = new ConcurrencyController(
+            Optional.ofNullable(req.getMinConcurrent()).orElse(ConcurrencyController.DEFAULT_MIN),
+            Optional.ofNullable(req.getMaxConcurrentLimit()).orElse(ConcurrencyController.DEFAULT_MAX),
+            TimeUnit.MILLISECONDS.toMicros(Optional.ofNullable(req.getTargetP99Millis()).orElse(0L)),
+            Optional.ofNullable(req.getMaxErrorRate()).orElse(ConcurrencyController.DEFAULT_MAX_ERROR_RATE));
+      } else {
+        concurrencyController = null;
+      }
+    }
+
+    if (req.getExecutionMode() != null) {
+      try {
+        executionMode = ExecutionMode.of(req.getExecutionMode());
+      } catch (IllegalArgumentException e) {
+        log.warn("Unknown execution mode: {}", req.getExecutionMode());
+      }
+    }
+
+    if (concurrencyController != null && executionMode != ExecutionMode.FAIR
+        && (req.getAdaptiveConcurrency() != null || req.getExecutionMode() != null)) {
+      log.warn("Adaptive concurrency only applies in fair mode; holding the limit at {}.", maxConcurrent);
+    }
+
+    if (req.getCallEvents() != null) {
+      publisher.setCallEventsEnabled(req.getCallEvents());
+    }
+
+    if (req.getOverflowPolicy() != null) {
+      try {
+        publisher.setOverflowPolicy(OverflowPolicy.of(req.getOverflowPolicy()));
+      } catch (IllegalArgumentException e) {
+        log.warn("Unknown overflow policy: {}", req.getOverflowPolicy());
       }
-      maxConcurrent = newMax;
     }
 
     if (req.getTimeout() != null) {
@@ -118,9 +555,86 @@ public class RequestLoopTaskManager {
     }
   }
 
+  private synchronized void resizeConcurrency(int newMax) {
+    if (this.maxConcurrent < newMax) {
+      executor.setMaximumPoolSize(newMax);
+      executor.setCorePoolSize(newMax);
+    } else if (this.maxConcurrent > newMax) {
+      executor.setCorePoolSize(newMax);
+      executor.setMaximumPoolSize(newMax);
+    }
+    permits.resize(newMax);
+    fairScheduler.resize(newMax);
+    maxConcurrent = newMax;
+    startQueuedAsyncTasks();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("webpecker.tasks", tasks, Map::size)
+        .register(registry);
+    Gauge.builder("webpecker.tasks.running", tasks, t -> t.values().stream().filter(RequestLoopTask::isRunning).count())
+        .register(registry);
+    Gauge.builder("webpecker.executor.queue", executor, e -> e.getQueue().size())
+        .tag("mode", "platform")
+        .register(registry);
+    Gauge.builder("webpecker.executor.queue", asyncQueue, Queue::size)
+        .tag("mode", "async")
+        .register(registry);
+    Gauge.builder("webpecker.executor.queue", fairScheduler, FairScheduler::waiting)
+        .tag("mode", "fair")
+        .register(registry);
+    Gauge.builder("webpecker.executor.active", executor, ThreadPoolExecutor::getActiveCount)
+        .register(registry);
+    Gauge.builder("webpecker.executor.slots.used", fairScheduler, FairScheduler::inUse)
+        .register(registry);
+    Gauge.builder("webpecker.concurrency.limit", this, m -> m.maxConcurrent)
+        .register(registry);
+    Gauge.builder("webpecker.batches", batches, Map::size)
+        .register(registry);
+    Gauge.builder("webpecker.profiles.active", profileScheduler, LoadProfileScheduler::getActive)
+        .register(registry);
+    meterRegistry = registry;
+    tasks.forEach(this::registerTaskMeters);
+  }
+
+  private void registerTaskMeters(int id, RequestLoopTask task) {
+    MeterRegistry registry = meterRegistry;
+    if (registry == null) {
+      return;
+    }
+    removeTaskMeters(id);
+    String tag = String.valueOf(id);
+    taskMeters.put(id, List.of(
+        FunctionCounter.builder("webpecker.task.iterations", task, RequestLoopTask::getIteration)
+            .tag("task", tag)
+            .register(registry),
+        FunctionCounter.builder("webpecker.task.errors", task, RequestLoopTask::getErrors)
+            .tag("task", tag)
+            .register(registry)));
+  }
+
+  private void removeTaskMeters(int id) {
+    List<Meter> meters = taskMeters.remove(id);
+    MeterRegistry registry = meterRegistry;
+    if (meters != null && registry != null) {
+      meters.forEach(registry::remove);
+    }
+  }
+
   public void shutdown() {
     if (executor != null && !executor.isShutdown())
       executor.shutdownNow();
+    if (virtualExecutor != null && !virtualExecutor.isShutdown())
+      virtualExecutor.shutdownNow();
+    if (scheduler != null && !scheduler.isShutdown())
+      scheduler.shutdownNow();
+    if (housekeeping != null && !housekeeping.isShutdown())
+      housekeeping.shutdownNow();
+    tasks.values().forEach(t -> t.cancelCall());
+    batches.values().forEach(BatchTask::cancel);
+    batches.clear();
+    asyncQueue.clear();
     futures.clear();
     tasks.clear();
   }
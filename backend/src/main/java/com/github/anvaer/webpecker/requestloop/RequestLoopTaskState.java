@@ -14,4 +14,22 @@ public class RequestLoopTaskState {
   private int repeat;
   private String url;
   private String state;
+  private double rate;
+  private long lateSends;
+  private long maxSendLagMillis;
+  private String protocol;
+  private Integer connectionPoolSize;
+  private boolean bypassDnsCache;
+  private String negotiatedProtocol;
+  private long connectionsOpened;
+  private long connectionsReused;
+  private int clientVersion;
+  private String bodyMode;
+  private long bodyBytes;
+  private long invalidBodies;
+  private String runId;
+  private int priority;
+  private int weight;
+  private int queuePosition;
+  private long queueWaitMillis;
 }
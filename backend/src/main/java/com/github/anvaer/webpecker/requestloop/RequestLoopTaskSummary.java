@@ -0,0 +1,14 @@
+package com.github.anvaer.webpecker.requestloop;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+public class RequestLoopTaskSummary {
+  private Integer id;
+  private String url;
+  private String state;
+  private int iteration;
+  private int repeat;
+}
@@ -0,0 +1,23 @@
+package com.github.anvaer.webpecker.requestloop;
+
+import java.util.concurrent.Semaphore;
+
+class ResizableSemaphore extends Semaphore {
+
+  private int size;
+
+  ResizableSemaphore(int size) {
+    super(size, true);
+    this.size = size;
+  }
+
+  synchronized void resize(int newSize) {
+    int delta = newSize - size;
+    if (delta > 0) {
+      release(delta);
+    } else if (delta < 0) {
+      reducePermits(-delta);
+    }
+    size = newSize;
+  }
+}
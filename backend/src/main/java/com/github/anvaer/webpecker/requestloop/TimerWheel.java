@@ -0,0 +1,86 @@
+package com.github.anvaer.webpecker.requestloop;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+class TimerWheel {
+
+  private static final Logger log = LoggerFactory.getLogger(TimerWheel.class);
+
+  private final long tickNanos;
+  private final int mask;
+  private final List<List<Timeout>> buckets;
+  private final long startNanos = System.nanoTime();
+  private long currentTick;
+  private int pending;
+
+  TimerWheel(long tickNanos, int requestedSlots) {
+    int slots = Integer.highestOneBit(Math.max(2, requestedSlots - 1)) << 1;
+    this.tickNanos = tickNanos;
+    this.mask = slots - 1;
+    this.buckets = new ArrayList<>(slots);
+    for (int i = 0; i < slots; i++) {
+      buckets.add(new ArrayList<>());
+    }
+  }
+
+  synchronized Timeout schedule(Runnable action, long delayNanos) {
+    long elapsed = System.nanoTime() - startNanos + Math.max(0, delayNanos);
+    long deadlineTick = Math.max(currentTick, (elapsed + tickNanos - 1) / tickNanos);
+    Timeout timeout = new Timeout(action, deadlineTick);
+    buckets.get((int) (deadlineTick & mask)).add(timeout);
+    pending++;
+    return timeout;
+  }
+
+  void advance() {
+    List<Runnable> due = new ArrayList<>();
+    synchronized (this) {
+      long nowTick = (System.nanoTime() - startNanos) / tickNanos;
+      for (; currentTick <= nowTick; currentTick++) {
+        Iterator<Timeout> it = buckets.get((int) (currentTick & mask)).iterator();
+        while (it.hasNext()) {
+          Timeout timeout = it.next();
+          if (timeout.cancelled || timeout.deadlineTick <= currentTick) {
+            it.remove();
+            pending--;
+            if (!timeout.cancelled) {
+              due.add(timeout.action);
+            }
+          }
+        }
+      }
+    }
+    for (Runnable action : due) {
+      try {
+        action.run();
+      } catch (RuntimeException e) {
+        log.warn("Timer action failed.", e);
+      }
+    }
+  }
+
+  synchronized int pending() {
+    return pending;
+  }
+
+  static final class Timeout {
+
+    private final Runnable action;
+    private final long deadlineTick;
+    private volatile boolean cancelled;
+
+    private Timeout(Runnable action, long deadlineTick) {
+      this.action = action;
+      this.deadlineTick = deadlineTick;
+    }
+
+    void cancel() {
+      cancelled = true;
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package com.github.anvaer.webpecker.stats;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+public class CallTimings {
+
+  private final long[] nanos = new long[LatencyStats.Phase.values().length];
+
+  public CallTimings() {
+    Arrays.fill(nanos, -1);
+  }
+
+  public void record(LatencyStats.Phase phase, long nanos) {
+    this.nanos[phase.ordinal()] = nanos;
+  }
+
+  public int micros(LatencyStats.Phase phase) {
+    long value = nanos[phase.ordinal()];
+    return value < 0 ? -1 : (int) Math.min(TimeUnit.NANOSECONDS.toMicros(value), Integer.MAX_VALUE);
+  }
+}
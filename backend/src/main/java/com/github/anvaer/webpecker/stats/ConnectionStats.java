@@ -0,0 +1,31 @@
+package com.github.anvaer.webpecker.stats;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class ConnectionStats {
+
+  private final LongAdder opened = new LongAdder();
+  private final LongAdder reused = new LongAdder();
+  private volatile String protocol;
+
+  public void record(String protocol, boolean reused) {
+    this.protocol = protocol;
+    if (reused) {
+      this.reused.increment();
+    } else {
+      opened.increment();
+    }
+  }
+
+  public long getOpened() {
+    return opened.sum();
+  }
+
+  public long getReused() {
+    return reused.sum();
+  }
+
+  public String getProtocol() {
+    return protocol;
+  }
+}
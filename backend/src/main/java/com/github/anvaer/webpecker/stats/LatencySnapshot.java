@@ -0,0 +1,33 @@
+package com.github.anvaer.webpecker.stats;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+public class LatencySnapshot {
+  private int id;
+  private long intervalCount;
+  private long errors;
+  private long bodyBytes;
+  private long bytesPerSecond;
+  private long invalidBodies;
+  private Percentiles total;
+  private Percentiles dns;
+  private Percentiles connect;
+  private Percentiles tls;
+  private Percentiles ttfb;
+  private Percentiles body;
+  private Percentiles corrected;
+
+  @AllArgsConstructor
+  @Getter
+  public static class Percentiles {
+    private long count;
+    private long p50;
+    private long p90;
+    private long p99;
+    private long p999;
+    private long max;
+  }
+}
@@ -0,0 +1,137 @@
+package com.github.anvaer.webpecker.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+public class LatencyStats {
+
+  public static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+  private static final int SIGNIFICANT_DIGITS = 2;
+
+  public enum Phase {
+    TOTAL,
+    DNS,
+    CONNECT,
+    TLS,
+    TTFB,
+    BODY
+  }
+
+  private final Recorder[] recorders = new Recorder[Phase.values().length];
+  private final Histogram[] cumulative = new Histogram[Phase.values().length];
+  private final Histogram[] intervals = new Histogram[Phase.values().length];
+  private final Recorder corrected = new Recorder(1, HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+  private final Histogram correctedCumulative = new Histogram(1, HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+  private Histogram correctedInterval;
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder bodyBytes = new LongAdder();
+  private final LongAdder invalidBodies = new LongAdder();
+  private long publishedErrors;
+  private long publishedBytes;
+  private long lastSnapshotNanos = System.nanoTime();
+
+  public LatencyStats() {
+    for (int i = 0; i < recorders.length; i++) {
+      recorders[i] = new Recorder(1, HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+    }
+  }
+
+  public void record(Phase phase, long nanos) {
+    long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_TRACKABLE_MICROS);
+    recorders[phase.ordinal()].recordValue(Math.max(micros, 0));
+  }
+
+  public void recordCorrected(long nanos) {
+    long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_TRACKABLE_MICROS);
+    corrected.recordValue(Math.max(micros, 0));
+  }
+
+  public void recordError() {
+    errors.increment();
+  }
+
+  public void recordBody(long bytes, long nanos) {
+    bodyBytes.add(bytes);
+    record(Phase.BODY, nanos);
+  }
+
+  public void recordInvalidBody() {
+    invalidBodies.increment();
+  }
+
+  public long getBodyBytes() {
+    return bodyBytes.sum();
+  }
+
+  public long getInvalidBodies() {
+    return invalidBodies.sum();
+  }
+
+  public long getErrors() {
+    return errors.sum();
+  }
+
+  public synchronized Histogram drainInterval() {
+    collectIntervals();
+    return intervals[Phase.TOTAL.ordinal()].copy();
+  }
+
+  private long collectIntervals() {
+    long newValues = 0;
+    for (int i = 0; i < recorders.length; i++) {
+      intervals[i] = recorders[i].getIntervalHistogram(intervals[i]);
+      newValues += intervals[i].getTotalCount();
+      if (cumulative[i] == null) {
+        cumulative[i] = new Histogram(1, HIGHEST_TRACKABLE_MICROS, SIGNIFICANT_DIGITS);
+      }
+      cumulative[i].add(intervals[i]);
+    }
+    correctedInterval = corrected.getIntervalHistogram(correctedInterval);
+    correctedCumulative.add(correctedInterval);
+    return newValues + correctedInterval.getTotalCount();
+  }
+
+  public synchronized LatencySnapshot snapshot(int id) {
+    long newValues = collectIntervals();
+    long totalErrors = errors.sum();
+    long now = System.nanoTime();
+    long elapsedNanos = now - lastSnapshotNanos;
+    lastSnapshotNanos = now;
+    if (newValues == 0 && totalErrors == publishedErrors) {
+      return null;
+    }
+    publishedErrors = totalErrors;
+    long totalBytes = bodyBytes.sum();
+    long bytesPerSecond = elapsedNanos > 0
+        ? (long) ((totalBytes - publishedBytes) * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos)
+        : 0;
+    publishedBytes = totalBytes;
+    return new LatencySnapshot(
+        id,
+        intervals[Phase.TOTAL.ordinal()].getTotalCount(),
+        totalErrors,
+        totalBytes,
+        bytesPerSecond,
+        invalidBodies.sum(),
+        percentiles(cumulative[Phase.TOTAL.ordinal()]),
+        percentiles(cumulative[Phase.DNS.ordinal()]),
+        percentiles(cumulative[Phase.CONNECT.ordinal()]),
+        percentiles(cumulative[Phase.TLS.ordinal()]),
+        percentiles(cumulative[Phase.TTFB.ordinal()]),
+        percentiles(cumulative[Phase.BODY.ordinal()]),
+        percentiles(correctedCumulative));
+  }
+
+  public static LatencySnapshot.Percentiles percentiles(Histogram histogram) {
+    return new LatencySnapshot.Percentiles(
+        histogram.getTotalCount(),
+        histogram.getValueAtPercentile(50),
+        histogram.getValueAtPercentile(90),
+        histogram.getValueAtPercentile(99),
+        histogram.getValueAtPercentile(99.9),
+        histogram.getMaxValue());
+  }
+}
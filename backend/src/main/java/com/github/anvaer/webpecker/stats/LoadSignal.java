@@ -0,0 +1,50 @@
+package com.github.anvaer.webpecker.stats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+public class LoadSignal {
+
+  private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+  private final Recorder recorder = new Recorder(1, HIGHEST_TRACKABLE_MICROS, 2);
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder calls = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private Histogram interval;
+
+  public void record(long nanos) {
+    calls.increment();
+    totalNanos.add(nanos);
+    long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(nanos), HIGHEST_TRACKABLE_MICROS);
+    recorder.recordValue(Math.max(micros, 0));
+  }
+
+  public void recordError() {
+    errors.increment();
+  }
+
+  public long getCalls() {
+    return calls.sum();
+  }
+
+  public double getTotalNanos() {
+    return totalNanos.sum();
+  }
+
+  public synchronized Sample sample() {
+    interval = recorder.getIntervalHistogram(interval);
+    return new Sample(interval.getTotalCount(), errors.sumThenReset(), interval.getValueAtPercentile(99));
+  }
+
+  public record Sample(long calls, long errors, long p99Micros) {
+
+    public double errorRate() {
+      long attempts = calls + errors;
+      return attempts == 0 ? 0 : (double) errors / attempts;
+    }
+  }
+}
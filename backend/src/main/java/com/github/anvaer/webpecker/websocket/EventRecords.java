@@ -0,0 +1,137 @@
+package com.github.anvaer.webpecker.websocket;
+
+import java.nio.ByteBuffer;
+
+import com.github.anvaer.webpecker.httpclient.CallEvent;
+
+public final class EventRecords {
+
+  static final int RECORD_SIZE = 24;
+
+  static final byte CALL_EVENT = 1;
+  static final byte ITERATION = 2;
+  static final byte STATE = 3;
+  static final byte SEQUENCE = 4;
+
+  static final int RESULT_TIMEOUT_CONNECT_READ = -1;
+  static final int RESULT_TIMEOUT = -2;
+  static final int RESULT_NETWORK_ERROR = -3;
+
+  private static final CallEvent[] CALL_EVENTS = CallEvent.values();
+
+  private EventRecords() {
+  }
+
+  static void writeBinary(ByteBuffer buffer, byte type, int code, int id, int iteration, int value,
+      long value2) {
+    buffer.put(type)
+        .put((byte) code)
+        .putShort((short) 0)
+        .putInt(id)
+        .putInt(iteration)
+        .putInt(value)
+        .putLong(value2);
+  }
+
+  static void appendJson(StringBuilder sb, byte type, int code, int id, int iteration, int value,
+      long value2) {
+    switch (type) {
+      case CALL_EVENT:
+        sb.append("{\"id\":").append(id)
+            .append(",\"iteration\":").append(iteration)
+            .append(", \"event\":\"").append(CALL_EVENTS[code].eventName())
+            .append("\", \"time\":").append(value2)
+            .append(", \"msFromStart\":").append(value)
+            .append('}');
+        break;
+      case ITERATION:
+        sb.append("{\"id\":").append(id)
+            .append(",\"iteration\":").append(iteration)
+            .append(",\"result\":\"");
+        appendResult(sb, value);
+        sb.append('"');
+        if (value2 > 0) {
+          sb.append(",\"sendLagMicros\":").append(value2);
+        }
+        sb.append('}');
+        break;
+      case STATE:
+        sb.append("{\"id\":").append(id)
+            .append(",\"state\":\"").append(stateName(code))
+            .append("\"}");
+        break;
+      case SEQUENCE:
+        sb.append("{\"seq\":").append(value2).append('}');
+        break;
+      default:
+        break;
+    }
+  }
+
+  public static void appendResult(StringBuilder sb, int resultCode) {
+    switch (resultCode) {
+      case RESULT_TIMEOUT_CONNECT_READ:
+        sb.append("timeout:connect/read");
+        break;
+      case RESULT_TIMEOUT:
+        sb.append("timeout");
+        break;
+      case RESULT_NETWORK_ERROR:
+        sb.append("network error");
+        break;
+      default:
+        sb.append(resultCode);
+    }
+  }
+
+  public static int resultCode(String result) {
+    switch (result) {
+      case "timeout:connect/read":
+        return RESULT_TIMEOUT_CONNECT_READ;
+      case "timeout":
+        return RESULT_TIMEOUT;
+      case "network error":
+        return RESULT_NETWORK_ERROR;
+      default:
+        try {
+          return Integer.parseInt(result);
+        } catch (NumberFormatException e) {
+          return 0;
+        }
+    }
+  }
+
+  static int stateCode(String state) {
+    switch (state) {
+      case "Not started":
+        return 1;
+      case "running":
+        return 2;
+      case "done":
+        return 3;
+      case "cancelled":
+        return 4;
+      case "paused":
+        return 5;
+      default:
+        return 0;
+    }
+  }
+
+  static String stateName(int code) {
+    switch (code) {
+      case 1:
+        return "Not started";
+      case 2:
+        return "running";
+      case 3:
+        return "done";
+      case 4:
+        return "cancelled";
+      case 5:
+        return "paused";
+      default:
+        return "unknown";
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package com.github.anvaer.webpecker.websocket;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+class EventRingBuffer {
+
+  interface RecordConsumer {
+    void accept(byte type, int code, int id, int iteration, int value, long value2);
+  }
+
+  private final int capacity;
+  private final int mask;
+  private final AtomicLongArray sequences;
+  private final byte[] types;
+  private final byte[] codes;
+  private final int[] ids;
+  private final int[] iterations;
+  private final int[] values;
+  private final long[] values2;
+  private final AtomicLong tail = new AtomicLong();
+  private final AtomicLong head = new AtomicLong();
+
+  EventRingBuffer(int requestedCapacity) {
+    this.capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+    this.mask = capacity - 1;
+    this.sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+    this.types = new byte[capacity];
+    this.codes = new byte[capacity];
+    this.ids = new int[capacity];
+    this.iterations = new int[capacity];
+    this.values = new int[capacity];
+    this.values2 = new long[capacity];
+  }
+
+  boolean offer(byte type, int code, int id, int iteration, int value, long value2) {
+    long pos = tail.get();
+    while (true) {
+      int index = (int) (pos & mask);
+      long diff = sequences.get(index) - pos;
+      if (diff == 0) {
+        if (tail.compareAndSet(pos, pos + 1)) {
+          types[index] = type;
+          codes[index] = (byte) code;
+          ids[index] = id;
+          iterations[index] = iteration;
+          values[index] = value;
+          values2[index] = value2;
+          sequences.set(index, pos + 1);
+          return true;
+        }
+        pos = tail.get();
+      } else if (diff < 0) {
+        return false;
+      } else {
+        pos = tail.get();
+      }
+    }
+  }
+
+  boolean discardOldest() {
+    return drain(null, 1) == 1;
+  }
+
+  int drain(RecordConsumer consumer, int max) {
+    int drained = 0;
+    long pos = head.get();
+    while (drained < max) {
+      int index = (int) (pos & mask);
+      long diff = sequences.get(index) - (pos + 1);
+      if (diff == 0) {
+        if (head.compareAndSet(pos, pos + 1)) {
+          if (consumer != null) {
+            consumer.accept(types[index], codes[index], ids[index], iterations[index],
+                values[index], values2[index]);
+          }
+          sequences.set(index, pos + capacity);
+          drained++;
+          pos++;
+        } else {
+          pos = head.get();
+        }
+      } else if (diff < 0) {
+        break;
+      } else {
+        pos = head.get();
+      }
+    }
+    return drained;
+  }
+
+  int size() {
+    long size = tail.get() - head.get();
+    return (int) Math.max(0, Math.min(size, capacity));
+  }
+
+  int capacity() {
+    return capacity;
+  }
+}
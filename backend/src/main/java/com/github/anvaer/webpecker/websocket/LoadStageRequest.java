@@ -0,0 +1,17 @@
+package com.github.anvaer.webpecker.websocket;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class LoadStageRequest {
+  private String type;
+  private Double rate;
+  private Double toRate;
+  private Long durationMillis;
+  private Integer steps;
+}
@@ -0,0 +1,11 @@
+package com.github.anvaer.webpecker.websocket;
+
+public enum OverflowPolicy {
+  DROP_OLDEST,
+  SAMPLE,
+  COALESCE;
+
+  public static OverflowPolicy of(String value) {
+    return OverflowPolicy.valueOf(value.trim().toUpperCase().replace('-', '_'));
+  }
+}
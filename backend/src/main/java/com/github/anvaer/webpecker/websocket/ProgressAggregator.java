@@ -0,0 +1,76 @@
+package com.github.anvaer.webpecker.websocket;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+class ProgressAggregator {
+
+  private final int id;
+  private final Map<Integer, LongAdder> results = new ConcurrentHashMap<>();
+  private final AtomicInteger lastIteration = new AtomicInteger();
+  private final LongAdder completed = new LongAdder();
+  private final AtomicBoolean dirty = new AtomicBoolean();
+  private volatile boolean retired;
+
+  ProgressAggregator(int id) {
+    this.id = id;
+  }
+
+  int id() {
+    return id;
+  }
+
+  void record(int iteration, int resultCode) {
+    LongAdder counter = results.get(resultCode);
+    if (counter == null) {
+      counter = results.computeIfAbsent(resultCode, k -> new LongAdder());
+    }
+    counter.increment();
+    completed.increment();
+    if (lastIteration.get() < iteration) {
+      lastIteration.accumulateAndGet(iteration, Math::max);
+    }
+    if (!dirty.get()) {
+      dirty.set(true);
+    }
+  }
+
+  boolean isRetired() {
+    return retired;
+  }
+
+  void retire() {
+    retired = true;
+  }
+
+  boolean drainTo(StringBuilder sb) {
+    if (!dirty.getAndSet(false)) {
+      return false;
+    }
+    sb.append("{\"id\":").append(id)
+        .append(",\"iteration\":").append(lastIteration.get())
+        .append(",\"completed\":").append(completed.sum())
+        .append(",\"statuses\":{");
+    appendCounts(sb, true);
+    sb.append("},\"errors\":{");
+    appendCounts(sb, false);
+    sb.append("}}");
+    return true;
+  }
+
+  private void appendCounts(StringBuilder sb, boolean statuses) {
+    boolean first = true;
+    for (Map.Entry<Integer, LongAdder> entry : results.entrySet()) {
+      if (entry.getKey() > 0 != statuses) {
+        continue;
+      }
+      sb.append(first ? "\"" : ",\"");
+      EventRecords.appendResult(sb, entry.getKey());
+      sb.append("\":").append(entry.getValue().sum());
+      first = false;
+    }
+  }
+}
@@ -0,0 +1,55 @@
+package com.github.anvaer.webpecker.websocket;
+
+class ReplayWindow {
+
+  private final int capacity;
+  private final int mask;
+  private final byte[] types;
+  private final byte[] codes;
+  private final int[] ids;
+  private final int[] iterations;
+  private final int[] values;
+  private final long[] values2;
+  private long nextSeq = 1;
+
+  ReplayWindow(int requestedCapacity) {
+    this.capacity = Integer.highestOneBit(Math.max(2, requestedCapacity - 1)) << 1;
+    this.mask = capacity - 1;
+    this.types = new byte[capacity];
+    this.codes = new byte[capacity];
+    this.ids = new int[capacity];
+    this.iterations = new int[capacity];
+    this.values = new int[capacity];
+    this.values2 = new long[capacity];
+  }
+
+  long append(byte type, int code, int id, int iteration, int value, long value2) {
+    int index = (int) (nextSeq & mask);
+    types[index] = type;
+    codes[index] = (byte) code;
+    ids[index] = id;
+    iterations[index] = iteration;
+    values[index] = value;
+    values2[index] = value2;
+    return nextSeq++;
+  }
+
+  long lastSeq() {
+    return nextSeq - 1;
+  }
+
+  long firstSeq() {
+    return Math.max(1, nextSeq - capacity);
+  }
+
+  boolean covers(long afterSeq) {
+    return afterSeq >= firstSeq() - 1 && afterSeq <= lastSeq();
+  }
+
+  void replay(long afterSeq, EventRingBuffer.RecordConsumer consumer) {
+    for (long seq = afterSeq + 1; seq < nextSeq; seq++) {
+      int index = (int) (seq & mask);
+      consumer.accept(types[index], codes[index], ids[index], iterations[index], values[index], values2[index]);
+    }
+  }
+}
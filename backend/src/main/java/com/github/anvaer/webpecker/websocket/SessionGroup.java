@@ -0,0 +1,110 @@
+package com.github.anvaer.webpecker.websocket;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+
+class SessionGroup {
+
+  private final boolean binary;
+  private final Set<Integer> subscription;
+  private final List<SessionSender> members = new ArrayList<>();
+  private final int maxBatchSize;
+  private final StringBuilder jsonBatch;
+  private final ByteBuffer binaryBatch;
+  private int batchRecords;
+
+  SessionGroup(boolean binary, Set<Integer> subscription, int maxBatchSize) {
+    this.binary = binary;
+    this.subscription = subscription;
+    this.maxBatchSize = maxBatchSize;
+    this.jsonBatch = binary ? null : new StringBuilder(maxBatchSize * 96);
+    this.binaryBatch = binary ? ByteBuffer.allocateDirect(maxBatchSize * EventRecords.RECORD_SIZE) : null;
+  }
+
+  boolean matches(boolean binary, Set<Integer> subscription) {
+    return this.binary == binary && Objects.equals(this.subscription, subscription);
+  }
+
+  void add(SessionSender sender) {
+    members.add(sender);
+  }
+
+  List<SessionSender> members() {
+    return members;
+  }
+
+  boolean acceptsAll() {
+    return subscription == null;
+  }
+
+  boolean accepts(int id) {
+    return subscription == null || subscription.contains(id);
+  }
+
+  void appendText(String text) {
+    if (binary) {
+      broadcast(new TextMessage("[" + text + "]"));
+      return;
+    }
+    if (batchRecords >= maxBatchSize) {
+      sendBatch();
+    }
+    jsonBatch.append(batchRecords == 0 ? '[' : ',').append(text);
+    batchRecords++;
+  }
+
+  void appendRecord(byte type, int code, int id, int iteration, int value, long value2) {
+    if (accepts(id)) {
+      append(type, code, id, iteration, value, value2);
+    }
+  }
+
+  void appendSequence(long seq) {
+    if (batchRecords > 0) {
+      append(EventRecords.SEQUENCE, 0, 0, 0, 0, seq);
+    }
+  }
+
+  private void append(byte type, int code, int id, int iteration, int value, long value2) {
+    if (batchRecords >= maxBatchSize) {
+      sendBatch();
+    }
+    if (binary) {
+      EventRecords.writeBinary(binaryBatch, type, code, id, iteration, value, value2);
+    } else {
+      jsonBatch.append(batchRecords == 0 ? '[' : ',');
+      EventRecords.appendJson(jsonBatch, type, code, id, iteration, value, value2);
+    }
+    batchRecords++;
+  }
+
+  void sendBatch() {
+    if (batchRecords == 0) {
+      return;
+    }
+    if (binary) {
+      binaryBatch.flip();
+      ByteBuffer payload = ByteBuffer.allocate(binaryBatch.remaining()).put(binaryBatch).flip();
+      binaryBatch.clear();
+      for (SessionSender member : members) {
+        member.enqueue(new BinaryMessage(payload.duplicate()));
+      }
+    } else {
+      broadcast(new TextMessage(jsonBatch.append(']')));
+      jsonBatch.setLength(0);
+    }
+    batchRecords = 0;
+  }
+
+  private void broadcast(TextMessage message) {
+    for (SessionSender member : members) {
+      member.enqueue(message);
+    }
+  }
+}
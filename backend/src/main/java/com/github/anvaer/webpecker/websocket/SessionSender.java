@@ -0,0 +1,91 @@
+package com.github.anvaer.webpecker.websocket;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+class SessionSender {
+
+  private static final Logger log = LoggerFactory.getLogger(SessionSender.class);
+
+  private final WebSocketSession session;
+  private final boolean binary;
+  private final BlockingQueue<WebSocketMessage<?>> queue;
+  private final LongAdder droppedMessages = new LongAdder();
+  private final Thread thread;
+  private volatile Set<Integer> subscription;
+  private long reportedDrops;
+
+  SessionSender(WebSocketSession session, int queueCapacity) {
+    this.session = session;
+    this.binary = WebSocketEventPublisher.BINARY_PROTOCOL.equals(session.getAcceptedProtocol());
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.thread = Thread.ofVirtual().name("ws-sender-" + session.getId()).start(this::sendLoop);
+  }
+
+  WebSocketSession session() {
+    return session;
+  }
+
+  boolean isBinary() {
+    return binary;
+  }
+
+  Set<Integer> subscription() {
+    return subscription;
+  }
+
+  void subscribe(Set<Integer> taskIds) {
+    this.subscription = taskIds == null || taskIds.isEmpty() ? null : taskIds;
+  }
+
+  int backlog() {
+    return queue.size();
+  }
+
+  void enqueue(WebSocketMessage<?> message) {
+    while (!queue.offer(message)) {
+      if (queue.poll() != null) {
+        droppedMessages.increment();
+      }
+    }
+  }
+
+  long newDrops() {
+    long dropped = droppedMessages.sum();
+    if (dropped == reportedDrops) {
+      return 0;
+    }
+    reportedDrops = dropped;
+    return dropped;
+  }
+
+  void close() {
+    thread.interrupt();
+    queue.clear();
+  }
+
+  private void sendLoop() {
+    while (!Thread.currentThread().isInterrupted()) {
+      WebSocketMessage<?> message;
+      try {
+        message = queue.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      try {
+        if (session.isOpen()) {
+          session.sendMessage(message);
+        }
+      } catch (Exception e) {
+        log.warn("WebSocket send failed.", e);
+      }
+    }
+  }
+}
@@ -4,6 +4,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
 import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
 import org.springframework.web.socket.server.support.HttpSessionHandshakeInterceptor;
 
 import com.github.anvaer.webpecker.requestloop.RequestLoopTaskController;
@@ -20,7 +21,12 @@ public class WebSocketConfig implements WebSocketConfigurer {
 
   @Override
   public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+    DefaultHandshakeHandler handshakeHandler = new DefaultHandshakeHandler();
+    handshakeHandler.setSupportedProtocols(
+        WebSocketEventPublisher.BINARY_PROTOCOL,
+        WebSocketEventPublisher.JSON_PROTOCOL);
     registry.addHandler(controller, "/req")
+        .setHandshakeHandler(handshakeHandler)
         .addInterceptors(new HttpSessionHandshakeInterceptor());
   }
 }
@@ -1,134 +1,529 @@
 package com.github.anvaer.webpecker.websocket;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 
+import com.github.anvaer.webpecker.httpclient.CallEvent;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import jakarta.annotation.PreDestroy;
 
 @Component
-public class WebSocketEventPublisher {
+public class WebSocketEventPublisher implements MeterBinder {
+
+  public static final String BINARY_PROTOCOL = "webpecker.binary.v1";
+  public static final String JSON_PROTOCOL = "webpecker.json.v1";
 
   private static final Logger log = LoggerFactory.getLogger(WebSocketEventPublisher.class);
   private static final int MAX_BATCH_SIZE = 200;
-  private static final long FLUSH_INTERVAL_MS = 100;
-
-  private final ExecutorService wsExecutor = Executors.newSingleThreadExecutor(r -> {
-    Thread t = new Thread(r, "ws-sender");
-    t.setDaemon(true);
-    return t;
-  });
-  private final ScheduledExecutorService flushScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-    Thread t = new Thread(r, "ws-flusher");
-    t.setDaemon(true);
-    return t;
-  });
-  private final Queue<String> eventBuffer = new ConcurrentLinkedQueue<>();
-  private final AtomicReference<WebSocketSession> sessionRef = new AtomicReference<>();
+  private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final int DEFAULT_BUFFER_CAPACITY = 65536;
+  private static final int SAMPLE_EVERY = 16;
+  private static final int SESSION_QUEUE_CAPACITY = 64;
+  private static final int DEFAULT_REPLAY_WINDOW = 65536;
+  private static final int STATE_BUFFER_CAPACITY = 4096;
+  private static final int TEXT_BUFFER_CAPACITY = 256;
+
+  private final EventRingBuffer eventBuffer;
+  private final Queue<StateChange> stateBuffer = new ArrayBlockingQueue<>(STATE_BUFFER_CAPACITY);
+  private final Queue<String> textBuffer = new ArrayBlockingQueue<>(TEXT_BUFFER_CAPACITY);
+  private final Queue<Resync> resyncs = new ConcurrentLinkedQueue<>();
+  private final Map<Integer, ProgressAggregator> progress = new ConcurrentHashMap<>();
+  private final StringBuilder progressBatch = new StringBuilder();
+  private final ReplayWindow replayWindow;
+  private final long epoch = System.currentTimeMillis();
+  private volatile long lastSequence;
+  private final Map<String, SessionSender> sessions = new ConcurrentHashMap<>();
+  private final AtomicInteger sessionsVersion = new AtomicInteger();
+  private final List<SessionGroup> groups = new ArrayList<>();
+  private int groupsVersion = -1;
+  private final AtomicBoolean drainRequested = new AtomicBoolean();
+  private final Thread flusher;
+
+  private final LongAdder droppedEvents = new LongAdder();
+  private final LongAdder coalescedCallEvents = new LongAdder();
+  private final LongAdder coalescedIterations = new LongAdder();
+  private final LongAdder resyncDeltas = new LongAdder();
+  private final LongAdder resyncSnapshots = new LongAdder();
+  private final AtomicLong overflowCount = new AtomicLong();
+  private long reportedDrops;
+
+  private volatile OverflowPolicy overflowPolicy;
+  private volatile boolean callEventsEnabled = true;
 
   public WebSocketEventPublisher() {
-    flushScheduler.scheduleAtFixedRate(
-        this::flushEvents,
-        FLUSH_INTERVAL_MS,
-        FLUSH_INTERVAL_MS,
-        TimeUnit.MILLISECONDS);
+    this(DEFAULT_BUFFER_CAPACITY, OverflowPolicy.DROP_OLDEST.name());
+  }
+
+  public WebSocketEventPublisher(int bufferCapacity, String overflowPolicy) {
+    this(bufferCapacity, overflowPolicy, DEFAULT_REPLAY_WINDOW);
+  }
+
+  @Autowired
+  public WebSocketEventPublisher(
+      @Value("${websocket.event-buffer.capacity:65536}") int bufferCapacity,
+      @Value("${websocket.event-buffer.overflow-policy:drop_oldest}") String overflowPolicy,
+      @Value("${websocket.replay-window:65536}") int replayWindow) {
+    this(bufferCapacity, overflowPolicy, replayWindow, true);
+  }
+
+  private WebSocketEventPublisher(int bufferCapacity, String overflowPolicy, int replayWindow,
+      boolean backgroundFlush) {
+    this.eventBuffer = new EventRingBuffer(bufferCapacity);
+    this.replayWindow = new ReplayWindow(replayWindow);
+    this.overflowPolicy = OverflowPolicy.of(overflowPolicy);
+    if (backgroundFlush) {
+      this.flusher = new Thread(this::drainLoop, "ws-flusher");
+      flusher.setDaemon(true);
+      flusher.start();
+    } else {
+      this.flusher = null;
+    }
+  }
+
+  // for benchmarks: nothing is sent until the caller runs flush()
+  public static WebSocketEventPublisher withoutFlusher(int bufferCapacity, String overflowPolicy) {
+    return new WebSocketEventPublisher(bufferCapacity, overflowPolicy, DEFAULT_REPLAY_WINDOW, false);
+  }
+
+  public void flush() {
+    if (flusher != null) {
+      throw new IllegalStateException("flush() would race the background flusher");
+    }
+    flushEvents();
   }
 
   public void registerSession(WebSocketSession session) {
-    if (session != null && session.isOpen()) {
-      sessionRef.set(session);
+    if (session == null || sessions.containsKey(session.getId()) || !session.isOpen()) {
+      return;
+    }
+    if (sessions.putIfAbsent(session.getId(), new SessionSender(session, SESSION_QUEUE_CAPACITY)) == null) {
+      sessionsVersion.incrementAndGet();
     }
   }
 
   public void clearSession(WebSocketSession session) {
-    if (session != null && session.equals(sessionRef.get())) {
-      sessionRef.set(null);
+    if (session == null) {
+      return;
+    }
+    SessionSender sender = sessions.remove(session.getId());
+    if (sender != null) {
+      sender.close();
+      sessionsVersion.incrementAndGet();
     }
   }
 
+  public void subscribe(WebSocketSession session, Collection<Integer> taskIds) {
+    registerSession(session);
+    SessionSender sender = sessions.get(session.getId());
+    if (sender != null) {
+      sender.subscribe(taskIds == null ? null : Set.copyOf(taskIds));
+      sessionsVersion.incrementAndGet();
+    }
+  }
+
+  public int getSessionCount() {
+    return sessions.size();
+  }
+
+  public int getSendBacklog() {
+    return sessions.values().stream().mapToInt(SessionSender::backlog).sum();
+  }
+
   public void updateState(WebSocketSession session, int id, String state) {
-    addToBuffer(session, message(id, state));
+    registerSession(session);
+    if ("done".equals(state)) {
+      clearProgress(id);
+    }
+    offerBounded(stateBuffer, new StateChange(id, EventRecords.stateCode(state)));
   }
 
   public void restoreState(WebSocketSession session, String statesList) {
-    addToBuffer(session, statesList);
+    registerSession(session);
+    SessionSender sender = sessions.get(session.getId());
+    if (sender != null) {
+      sender.enqueue(new TextMessage("[" + statesList + "]"));
+    }
   }
 
-  public void updateIteration(WebSocketSession session, int id, int iteration, String result) {
-    addToBuffer(session, message(id, iteration, result));
+  public void resync(WebSocketSession session, Long epoch, Long lastSeq, Supplier<String> snapshot) {
+    registerSession(session);
+    SessionSender sender = sessions.get(session.getId());
+    if (sender != null) {
+      long afterSeq = epoch != null && epoch == this.epoch && lastSeq != null ? lastSeq : -1;
+      resyncs.add(new Resync(sender, afterSeq, snapshot));
+      LockSupport.unpark(flusher);
+    }
   }
 
-  public void registerEvent(WebSocketSession session, String requestTag, String eventName,
-      long nowMils, long elapsedMils) {
-    addToBuffer(session, "{%s, \"event\":\"%s\", \"time\":%d, \"msFromStart\":%d}"
-        .formatted(requestTag, eventName, nowMils, elapsedMils));
+  public void updateIteration(WebSocketSession session, int id, int iteration, String result) {
+    updateIteration(session, id, iteration, result, 0);
   }
 
-  private void addToBuffer(WebSocketSession session, String msg) {
-    eventBuffer.add(msg);
+  public void updateIteration(WebSocketSession session, int id, int iteration, String result,
+      long sendLagMicros) {
     registerSession(session);
-    if (eventBuffer.size() >= MAX_BATCH_SIZE) {
-      flushEvents();
+    ProgressAggregator aggregator = progress.get(id);
+    if (aggregator != null) {
+      aggregator.record(iteration, EventRecords.resultCode(result));
+      return;
+    }
+    addToBuffer(EventRecords.ITERATION, 0, id, iteration, EventRecords.resultCode(result), sendLagMicros);
+  }
+
+  public void setRawProgress(int id, boolean raw) {
+    if (raw) {
+      clearProgress(id);
+    } else {
+      progress.compute(id, (k, v) -> v == null || v.isRetired() ? new ProgressAggregator(k) : v);
+    }
+  }
+
+  public void startProgress(int id, boolean raw) {
+    if (raw) {
+      clearProgress(id);
+    } else {
+      ProgressAggregator previous = progress.put(id, new ProgressAggregator(id));
+      if (previous != null) {
+        previous.retire();
+      }
+    }
+  }
+
+  public boolean isRawProgress(int id) {
+    ProgressAggregator aggregator = progress.get(id);
+    return aggregator == null || aggregator.isRetired();
+  }
+
+  public void clearProgress(int id) {
+    ProgressAggregator aggregator = progress.get(id);
+    if (aggregator != null) {
+      aggregator.retire();
+    }
+  }
+
+  public void updateLatency(String snapshots) {
+    offerBounded(textBuffer, snapshots);
+  }
+
+  public void publishEvent(String event) {
+    offerBounded(textBuffer, event);
+  }
+
+  public void registerEvent(int id, int iteration, CallEvent event, long nowMils, long elapsedMils) {
+    addToBuffer(EventRecords.CALL_EVENT, event.ordinal(), id, iteration, (int) elapsedMils, nowMils);
+  }
+
+  public boolean isCallEventsEnabled() {
+    return callEventsEnabled;
+  }
+
+  public void setCallEventsEnabled(boolean callEventsEnabled) {
+    this.callEventsEnabled = callEventsEnabled;
+  }
+
+  public OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+  }
+
+  public int getBufferedEvents() {
+    return eventBuffer.size();
+  }
+
+  public long getDroppedEvents() {
+    return droppedEvents.sum();
+  }
+
+  public long getEpoch() {
+    return epoch;
+  }
+
+  public long getLastSequence() {
+    return lastSequence;
+  }
+
+  public long getResyncDeltas() {
+    return resyncDeltas.sum();
+  }
+
+  public long getResyncSnapshots() {
+    return resyncSnapshots.sum();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("webpecker.ws.event.buffer", this, WebSocketEventPublisher::getBufferedEvents)
+        .register(registry);
+    Gauge.builder("webpecker.ws.sessions", this, WebSocketEventPublisher::getSessionCount)
+        .register(registry);
+    Gauge.builder("webpecker.ws.send.backlog", this, WebSocketEventPublisher::getSendBacklog)
+        .register(registry);
+    Gauge.builder("webpecker.ws.progress.tasks", progress, Map::size)
+        .register(registry);
+    FunctionCounter.builder("webpecker.ws.events.dropped", droppedEvents, LongAdder::sum)
+        .register(registry);
+    FunctionCounter.builder("webpecker.ws.events.sequenced", this, WebSocketEventPublisher::getLastSequence)
+        .register(registry);
+    FunctionCounter.builder("webpecker.ws.resyncs", resyncDeltas, LongAdder::sum)
+        .tag("kind", "delta")
+        .register(registry);
+    FunctionCounter.builder("webpecker.ws.resyncs", resyncSnapshots, LongAdder::sum)
+        .tag("kind", "snapshot")
+        .register(registry);
+  }
+
+  private void addToBuffer(byte type, int code, int id, int iteration, int value, long value2) {
+    if (!eventBuffer.offer(type, code, id, iteration, value, value2)) {
+      onOverflow(type, code, id, iteration, value, value2);
+    }
+    if (eventBuffer.size() >= MAX_BATCH_SIZE && !drainRequested.get()
+        && drainRequested.compareAndSet(false, true)) {
+      LockSupport.unpark(flusher);
+    }
+  }
+
+  private <T> void offerBounded(Queue<T> queue, T item) {
+    if (queue.offer(item)) {
+      return;
+    }
+    droppedEvents.increment();
+    if (overflowPolicy != OverflowPolicy.COALESCE) {
+      queue.poll();
+      if (!queue.offer(item)) {
+        droppedEvents.increment();
+      }
+    }
+  }
+
+  private void onOverflow(byte type, int code, int id, int iteration, int value, long value2) {
+    long overflows = overflowCount.incrementAndGet();
+    switch (overflowPolicy) {
+      case DROP_OLDEST:
+        eventBuffer.discardOldest();
+        droppedEvents.increment();
+        if (!eventBuffer.offer(type, code, id, iteration, value, value2)) {
+          droppedEvents.increment();
+        }
+        break;
+      case SAMPLE:
+        droppedEvents.increment();
+        if (overflows % SAMPLE_EVERY == 0) {
+          eventBuffer.discardOldest();
+          eventBuffer.offer(type, code, id, iteration, value, value2);
+        }
+        break;
+      case COALESCE:
+        droppedEvents.increment();
+        if (type == EventRecords.CALL_EVENT) {
+          coalescedCallEvents.increment();
+        } else {
+          coalescedIterations.increment();
+        }
+        break;
+    }
+  }
+
+  private void drainLoop() {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        flushEvents();
+      } catch (Exception e) {
+        log.warn("WebSocket flush failed.", e);
+      }
+      drainRequested.set(false);
+      if (eventBuffer.size() < MAX_BATCH_SIZE) {
+        LockSupport.parkNanos(FLUSH_INTERVAL_NANOS);
+      }
     }
   }
 
   private void flushEvents() {
-    WebSocketSession session = sessionRef.get();
-    if (eventBuffer.isEmpty() || session == null || !session.isOpen()) {
+    List<SessionGroup> groups = currentGroups();
+    if (groups.isEmpty()) {
+      return;
+    }
+
+    Resync resync;
+    while ((resync = resyncs.poll()) != null) {
+      sendResync(resync);
+    }
+
+    String text;
+    while ((text = textBuffer.poll()) != null) {
+      for (SessionGroup group : groups) {
+        group.appendText(text);
+      }
+    }
+    reportDrops(groups);
+    flushProgress(groups);
+
+    eventBuffer.drain((type, code, id, iteration, value, value2) -> {
+      replayWindow.append(type, code, id, iteration, value, value2);
+      for (SessionGroup group : groups) {
+        group.appendRecord(type, code, id, iteration, value, value2);
+      }
+    }, eventBuffer.capacity());
+
+    StateChange change;
+    while ((change = stateBuffer.poll()) != null) {
+      replayWindow.append(EventRecords.STATE, change.stateCode(), change.id(), 0, 0, 0);
+      for (SessionGroup group : groups) {
+        group.appendRecord(EventRecords.STATE, change.stateCode(), change.id(), 0, 0, 0);
+      }
+    }
+    long seq = replayWindow.lastSeq();
+    lastSequence = seq;
+    for (SessionGroup group : groups) {
+      group.appendSequence(seq);
+      group.sendBatch();
+    }
+  }
+
+  private void flushProgress(List<SessionGroup> groups) {
+    List<Integer> ids = new ArrayList<>();
+    List<String> deltas = new ArrayList<>();
+    for (ProgressAggregator aggregator : progress.values()) {
+      progressBatch.setLength(0);
+      if (aggregator.drainTo(progressBatch)) {
+        ids.add(aggregator.id());
+        deltas.add(progressBatch.toString());
+      }
+      if (aggregator.isRetired()) {
+        progress.remove(aggregator.id(), aggregator);
+      }
+    }
+    if (deltas.isEmpty()) {
       return;
     }
+    String all = null;
+    for (SessionGroup group : groups) {
+      String message;
+      if (group.acceptsAll()) {
+        message = all == null ? all = progressMessage(ids, deltas, group) : all;
+      } else {
+        message = progressMessage(ids, deltas, group);
+      }
+      if (message != null) {
+        group.appendText(message);
+      }
+    }
+  }
 
-    List<String> drained = new ArrayList<>();
-    String msg;
-    while ((msg = eventBuffer.poll()) != null) {
-      drained.add(msg);
+  private String progressMessage(List<Integer> ids, List<String> deltas, SessionGroup group) {
+    StringBuilder sb = new StringBuilder("{\"progress\":[");
+    int entries = 0;
+    for (int i = 0; i < ids.size(); i++) {
+      if (group.accepts(ids.get(i))) {
+        sb.append(entries++ == 0 ? "" : ",").append(deltas.get(i));
+      }
     }
-    if (drained.isEmpty()) {
+    return entries == 0 ? null : sb.append("]}").toString();
+  }
+
+  private void sendResync(Resync resync) {
+    SessionSender sender = resync.sender();
+    long seq = replayWindow.lastSeq();
+    if (!replayWindow.covers(resync.afterSeq())) {
+      resyncSnapshots.increment();
+      sender.enqueue(new TextMessage("[{\"snapshot\":{\"epoch\":%d,\"seq\":%d,\"tasks\":%s}}]"
+          .formatted(epoch, seq, resync.snapshot().get())));
       return;
     }
-    String batch = drained.stream().collect(Collectors.joining(",", "[", "]"));
-    enqueue(session, batch);
+    resyncDeltas.increment();
+    SessionGroup delta = new SessionGroup(sender.isBinary(), sender.subscription(), MAX_BATCH_SIZE);
+    delta.add(sender);
+    // only ring events are sequenced; coalesced progress, state and latency ride along as a task snapshot
+    delta.appendText("{\"resync\":{\"epoch\":%d,\"fromSeq\":%d,\"toSeq\":%d,\"tasks\":%s}}"
+        .formatted(epoch, resync.afterSeq(), seq, resync.snapshot().get()));
+    replayWindow.replay(resync.afterSeq(), delta::appendRecord);
+    delta.appendSequence(seq);
+    delta.sendBatch();
   }
 
-  private void enqueue(WebSocketSession session, String payload) {
-    wsExecutor.execute(() -> {
-      try {
-        if (session.isOpen()) {
-          session.sendMessage(new TextMessage(payload));
+  private List<SessionGroup> currentGroups() {
+    int version = sessionsVersion.get();
+    if (version == groupsVersion) {
+      return groups;
+    }
+    groups.clear();
+    for (SessionSender sender : sessions.values()) {
+      SessionGroup group = groups.stream()
+          .filter(g -> g.matches(sender.isBinary(), sender.subscription()))
+          .findFirst()
+          .orElseGet(() -> {
+            SessionGroup created = new SessionGroup(sender.isBinary(), sender.subscription(), MAX_BATCH_SIZE);
+            groups.add(created);
+            return created;
+          });
+      group.add(sender);
+    }
+    groupsVersion = version;
+    return groups;
+  }
+
+  private void reportDrops(List<SessionGroup> groups) {
+    long dropped = droppedEvents.sum();
+    if (dropped != reportedDrops) {
+      reportedDrops = dropped;
+      String report = "{\"dropped\":%d,\"overflowPolicy\":\"%s\",\"coalesced\":{\"callEvents\":%d,\"iterations\":%d}}"
+          .formatted(dropped, overflowPolicy.name().toLowerCase(), coalescedCallEvents.sum(),
+              coalescedIterations.sum());
+      for (SessionGroup group : groups) {
+        group.appendText(report);
+      }
+    }
+    for (SessionGroup group : groups) {
+      for (SessionSender sender : group.members()) {
+        long sessionDrops = sender.newDrops();
+        if (sessionDrops > 0) {
+          sender.enqueue(new TextMessage("[{\"droppedMessages\":" + sessionDrops + "}]"));
         }
-      } catch (Exception e) {
-        log.warn("WebSocket send failed.", e);
       }
-    });
+    }
   }
 
-  private static String message(int id, String value) {
-    return "{\"id\":" + id + ",\"state\":\"" + value + "\"}";
+  private record StateChange(int id, int stateCode) {
   }
 
-  private static String message(int id, int iteration, String value) {
-    return "{\"id\":" + id + ",\"iteration\":" + iteration +
-        ",\"result\":\"" + value + "\"}";
+  private record Resync(SessionSender sender, long afterSeq, Supplier<String> snapshot) {
   }
 
   @PreDestroy
   public void shutdown() {
     try {
-      flushScheduler.shutdownNow();
-      wsExecutor.shutdown();
+      if (flusher != null) {
+        flusher.interrupt();
+      }
+      sessions.values().forEach(SessionSender::close);
     } catch (Exception e) {
       log.warn("WebSocket publisher shutdown failed.", e);
     }
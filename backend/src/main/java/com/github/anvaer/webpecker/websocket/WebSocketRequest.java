@@ -1,5 +1,8 @@
 package com.github.anvaer.webpecker.websocket;
 
+import java.util.List;
+import java.util.Map;
+
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
 import lombok.Getter;
@@ -10,10 +13,39 @@ import lombok.Setter;
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class WebSocketRequest {
   private String action;
+  private List<Integer> ids;
   private Integer id;
   private String url;
+  private List<String> urls;
+  private String urlFile;
+  private Integer workers;
+  private String method;
+  private Map<String, String> headers;
+  private String body;
+  private String csv;
   private Long delay;
+  private Double rate;
+  private List<LoadStageRequest> profile;
+  private Boolean distributed;
+  private String protocol;
+  private Integer connectionPoolSize;
+  private Boolean bypassDnsCache;
+  private String bodyMode;
+  private Boolean rawProgress;
+  private Long expectedCrc32;
   private Long timeout;
   private Integer repeat;
+  private Integer priority;
+  private Integer weight;
   private Integer maxConcurrent;
+  private Boolean adaptiveConcurrency;
+  private Integer minConcurrent;
+  private Integer maxConcurrentLimit;
+  private Long targetP99Millis;
+  private Double maxErrorRate;
+  private String executionMode;
+  private Boolean callEvents;
+  private String overflowPolicy;
+  private Long epoch;
+  private Long lastSeq;
 }
@@ -0,0 +1,119 @@
+package com.github.anvaer.webpecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.github.anvaer.webpecker.httpclient.HttpClient;
+import com.github.anvaer.webpecker.requestloop.BatchTask;
+import com.github.anvaer.webpecker.websocket.WebSocketEventPublisher;
+import com.sun.net.httpserver.HttpServer;
+
+import okhttp3.OkHttpClient;
+
+class BatchTaskTest {
+
+  HttpServer server;
+  HttpClient httpClient;
+  ExecutorService workers;
+  WebSocketEventPublisher publisher;
+  WebSocketSession session;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", exchange -> {
+      exchange.sendResponseHeaders(exchange.getRequestURI().getPath().startsWith("/missing") ? 404 : 200, -1);
+      exchange.close();
+    });
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.start();
+    httpClient = new HttpClient(new OkHttpClient.Builder().callTimeout(30, TimeUnit.SECONDS).build(),
+        mock(WebSocketEventPublisher.class));
+    workers = Executors.newVirtualThreadPerTaskExecutor();
+    publisher = mock(WebSocketEventPublisher.class);
+    session = mock(WebSocketSession.class);
+  }
+
+  @AfterEach
+  void tearDown() {
+    workers.shutdownNow();
+    server.stop(0);
+  }
+
+  @Test
+  void parseUrls_readsSitemapLocationsOrPlainLines() {
+    String sitemap = """
+        <urlset>
+          <url><loc>https://example.com/a?x=1&amp;y=2</loc></url>
+          <url><loc> https://example.com/b </loc></url>
+        </urlset>
+        """;
+    assertEquals(List.of("https://example.com/a?x=1&y=2", "https://example.com/b"),
+        BatchTask.parseUrls(null, sitemap));
+    assertEquals(List.of("https://example.com/c", "https://example.com/d"),
+        BatchTask.parseUrls(List.of("https://example.com/c"), "# comment\n\nhttps://example.com/d\nhttps://example.com/c\n"));
+  }
+
+  @Test
+  void start_spreadsIterationsAcrossSharedWorkers() {
+    BatchTask batch = new BatchTask(5, List.of(url("/a"), url("/b"), url("/missing")), 2, session, httpClient,
+        publisher);
+    batch.start(workers, 2);
+
+    BatchTask.Summary summary = awaitFinished(batch);
+    assertEquals("done", summary.state());
+    assertEquals(6, summary.completed());
+    assertEquals(3, summary.completedUrls());
+    assertEquals(1, summary.failingUrls());
+    assertEquals(2, summary.failures());
+    verify(publisher, times(6)).updateIteration(eq(session), eq(5), anyInt(), anyString());
+    verify(publisher, timeout(1000)).updateState(session, 5, "done");
+  }
+
+  @Test
+  void pause_holdsWorkersUntilResumedAndCancelStopsTheGroup() throws Exception {
+    BatchTask batch = new BatchTask(6, List.of(url("/a")), 200, session, httpClient, publisher);
+    batch.start(workers, 1);
+    batch.pause();
+    Thread.sleep(100);
+    long dispatched = batch.getSummary().dispatched();
+    Thread.sleep(200);
+
+    assertEquals("paused", batch.getSummary().state());
+    assertEquals(dispatched, batch.getSummary().dispatched());
+
+    batch.resume();
+    assertEquals(200, awaitFinished(batch).completed());
+
+    BatchTask cancelled = new BatchTask(7, List.of(url("/a")), 1_000_000, session, httpClient, publisher);
+    cancelled.start(workers, 4);
+    cancelled.pause();
+    cancelled.cancel();
+    assertEquals("cancelled", awaitFinished(cancelled).state());
+  }
+
+  private static BatchTask.Summary awaitFinished(BatchTask batch) {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!batch.isFinished() && System.nanoTime() < deadline) {
+      Thread.onSpinWait();
+    }
+    assertTrue(batch.isFinished());
+    return batch.getSummary();
+  }
+
+  private String url(String path) {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+  }
+}
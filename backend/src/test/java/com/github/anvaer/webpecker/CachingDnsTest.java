@@ -0,0 +1,79 @@
+package com.github.anvaer.webpecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.InetAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.anvaer.webpecker.httpclient.CachingDns;
+
+import okhttp3.Dns;
+
+class CachingDnsTest {
+
+  private static final InetAddress FIRST = address("10.0.0.1");
+  private static final InetAddress SECOND = address("10.0.0.2");
+
+  @Test
+  void lookup_cachesWithinTtlAndRotatesAddresses() throws Exception {
+    AtomicInteger lookups = new AtomicInteger();
+    Dns delegate = host -> {
+      lookups.incrementAndGet();
+      return List.of(FIRST, SECOND);
+    };
+    CachingDns dns = new CachingDns(delegate, 60_000, Map.of());
+
+    assertEquals(List.of(FIRST, SECOND), dns.lookup("example.com"));
+    assertEquals(List.of(SECOND, FIRST), dns.lookup("EXAMPLE.com"));
+    assertEquals(List.of(FIRST, SECOND), dns.lookup("example.com"));
+
+    assertEquals(1, lookups.get());
+    assertEquals(2, dns.getHits());
+    assertEquals(1, dns.getMisses());
+  }
+
+  @Test
+  void lookup_refreshesExpiredEntriesAndAfterClear() throws Exception {
+    AtomicInteger lookups = new AtomicInteger();
+    CachingDns expiring = new CachingDns(host -> {
+      lookups.incrementAndGet();
+      return List.of(FIRST);
+    }, 0, Map.of());
+
+    expiring.lookup("example.com");
+    expiring.lookup("example.com");
+    assertEquals(2, lookups.get());
+
+    CachingDns cached = new CachingDns(host -> {
+      lookups.incrementAndGet();
+      return List.of(FIRST);
+    }, 60_000, Map.of());
+    cached.lookup("example.com");
+    cached.clear();
+    cached.lookup("example.com");
+    assertEquals(4, lookups.get());
+  }
+
+  @Test
+  void overrides_skipResolver() throws Exception {
+    CachingDns dns = new CachingDns(host -> {
+      throw new AssertionError("resolver should not be called");
+    }, 60_000, CachingDns.parseOverrides("api.test=10.0.0.1|10.0.0.2"));
+
+    assertEquals(List.of(FIRST, SECOND), dns.lookup("api.test"));
+    assertEquals(List.of(SECOND, FIRST), dns.lookup("api.test"));
+    assertThrows(IllegalArgumentException.class, () -> CachingDns.parseOverrides("broken"));
+  }
+
+  private static InetAddress address(String ip) {
+    try {
+      return InetAddress.getByName(ip);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
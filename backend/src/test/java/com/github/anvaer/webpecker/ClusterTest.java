@@ -0,0 +1,143 @@
+package com.github.anvaer.webpecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.anvaer.webpecker.cluster.ClusterCoordinator;
+import com.github.anvaer.webpecker.cluster.ClusterWorker;
+import com.github.anvaer.webpecker.httpclient.HttpClient;
+import com.github.anvaer.webpecker.websocket.WebSocketEventPublisher;
+import com.sun.net.httpserver.HttpServer;
+
+import okhttp3.OkHttpClient;
+
+class ClusterTest {
+
+  HttpServer server;
+  ClusterWorker first;
+  ClusterWorker second;
+  ClusterCoordinator coordinator;
+  WebSocketEventPublisher publisher;
+  WebSocketSession session;
+  List<String> events;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+    server.createContext("/", exchange -> {
+      if (exchange.getRequestURI().getPath().startsWith("/slow")) {
+        try {
+          Thread.sleep(10_000);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      exchange.sendResponseHeaders(200, -1);
+      exchange.close();
+    });
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.start();
+
+    HttpClient httpClient = new HttpClient(
+        new OkHttpClient.Builder().callTimeout(30, TimeUnit.SECONDS).build(),
+        mock(WebSocketEventPublisher.class));
+    first = new ClusterWorker(0, httpClient, mock(WebSocketEventPublisher.class));
+    second = new ClusterWorker(0, httpClient, mock(WebSocketEventPublisher.class));
+
+    publisher = mock(WebSocketEventPublisher.class);
+    session = mock(WebSocketSession.class);
+    events = new CopyOnWriteArrayList<>();
+    doAnswer(inv -> events.add(inv.getArgument(0))).when(publisher).publishEvent(anyString());
+    coordinator = new ClusterCoordinator(
+        "127.0.0.1:" + first.getPort() + ", 127.0.0.1:" + second.getPort(), publisher, new ObjectMapper());
+  }
+
+  @AfterEach
+  void tearDown() {
+    coordinator.shutdown();
+    first.shutdown();
+    second.shutdown();
+    server.stop(0);
+  }
+
+  @Test
+  void submit_shardsRepeatAcrossWorkersAndMergesHistograms() throws Exception {
+    awaitConnectedWorkers(2);
+    assertTrue(coordinator.submit(1, url("/ok"), 11, 0, 0, session));
+    assertEquals(2, coordinator.getConnectedWorkers());
+
+    verify(publisher, timeout(5000)).updateState(session, 1, "done");
+    String last = events.stream().filter(e -> e.contains("\"state\":\"done\"")).findFirst().orElseThrow();
+    assertTrue(last.contains("\"workers\":2"));
+    assertTrue(last.contains("\"iteration\":11"));
+    assertTrue(last.contains("\"count\":11"));
+    assertEquals(0, coordinator.getActiveTasks());
+  }
+
+  @Test
+  void cancel_propagatesToEveryWorker() throws Exception {
+    awaitConnectedWorkers(2);
+    assertTrue(coordinator.submit(2, url("/slow"), 1000, 0, 0, session));
+    awaitActiveTasks(2);
+
+    assertTrue(coordinator.cancel(2));
+
+    verify(publisher, timeout(5000)).updateState(session, 2, "cancelled");
+    awaitActiveTasks(0);
+  }
+
+  @Test
+  void submit_usesConnectedWorkersWithoutDialingDeadOnes() throws Exception {
+    int deadPort;
+    try (ServerSocket closed = new ServerSocket(0)) {
+      deadPort = closed.getLocalPort();
+    }
+    coordinator.shutdown();
+    coordinator = new ClusterCoordinator(
+        "127.0.0.1:" + first.getPort() + ", 127.0.0.1:" + deadPort, publisher, new ObjectMapper());
+    awaitConnectedWorkers(1);
+
+    assertTrue(coordinator.submit(3, url("/ok"), 4, 0, 0, session));
+
+    verify(publisher, timeout(5000)).updateState(session, 3, "done");
+    String last = events.stream().filter(e -> e.contains("\"state\":\"done\"")).findFirst().orElseThrow();
+    assertTrue(last.contains("\"workers\":1"));
+    assertTrue(last.contains("\"iteration\":4"));
+  }
+
+  private String url(String path) {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+  }
+
+  private void awaitConnectedWorkers(int expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (coordinator.getConnectedWorkers() != expected && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, coordinator.getConnectedWorkers());
+  }
+
+  private void awaitActiveTasks(int expected) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (first.getActiveTasks() + second.getActiveTasks() != expected
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(expected, first.getActiveTasks() + second.getActiveTasks());
+  }
+}
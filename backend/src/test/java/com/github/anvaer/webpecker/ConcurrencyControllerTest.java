@@ -0,0 +1,50 @@
+package com.github.anvaer.webpecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.anvaer.webpecker.requestloop.ConcurrencyController;
+import com.github.anvaer.webpecker.stats.LoadSignal;
+
+class ConcurrencyControllerTest {
+
+  @Test
+  void next_increasesWhileHealthyAndBacksOffPastTheKnee() {
+    ConcurrencyController controller = new ConcurrencyController(1, 64, 0, 0.05);
+
+    ConcurrencyController.Decision decision = controller.next(8, 8, new LoadSignal.Sample(100, 0, 10_000));
+    assertEquals("increase", decision.action());
+    assertEquals(9, decision.limit());
+    assertEquals(20_000, decision.p99LimitMicros());
+
+    decision = controller.next(9, 9, new LoadSignal.Sample(100, 0, 25_000));
+    assertEquals("decrease", decision.action());
+    assertEquals("p99 latency", decision.reason());
+    assertEquals(6, decision.limit());
+    assertEquals(9, controller.getKnee());
+  }
+
+  @Test
+  void next_backsOffOnErrorsAndHoldsWithoutSamples() {
+    ConcurrencyController controller = new ConcurrencyController(2, 64, 50_000, 0.05);
+
+    ConcurrencyController.Decision decision = controller.next(2, 2, new LoadSignal.Sample(90, 10, 1_000));
+    assertEquals("error rate", decision.reason());
+    assertEquals(2, decision.limit());
+
+    decision = controller.next(4, 4, new LoadSignal.Sample(3, 0, 1_000));
+    assertEquals("hold", decision.action());
+    assertEquals(4, decision.limit());
+  }
+
+  @Test
+  void next_holdsWhileLimitIsNotSaturated() {
+    ConcurrencyController controller = new ConcurrencyController(1, 64, 0, 0.05);
+
+    ConcurrencyController.Decision decision = controller.next(8, 3, new LoadSignal.Sample(100, 0, 10_000));
+    assertEquals("hold", decision.action());
+    assertEquals("limit not saturated", decision.reason());
+    assertEquals(8, decision.limit());
+  }
+}
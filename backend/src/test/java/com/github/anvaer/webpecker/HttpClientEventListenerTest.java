@@ -0,0 +1,105 @@
+package com.github.anvaer.webpecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.anvaer.webpecker.httpclient.CallEvent;
+import com.github.anvaer.webpecker.httpclient.HttpClientEventListener;
+import com.github.anvaer.webpecker.httpclient.RequestTag;
+import com.github.anvaer.webpecker.stats.ConnectionStats;
+import com.github.anvaer.webpecker.stats.LatencySnapshot;
+import com.github.anvaer.webpecker.stats.LatencyStats;
+import com.github.anvaer.webpecker.websocket.WebSocketEventPublisher;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.Protocol;
+import okhttp3.Request;
+
+class HttpClientEventListenerTest {
+
+  WebSocketEventPublisher publisher;
+  LatencyStats stats;
+  ConnectionStats connectionStats;
+  Call call;
+
+  @BeforeEach
+  void setUp() {
+    publisher = mock(WebSocketEventPublisher.class);
+    stats = new LatencyStats();
+    connectionStats = new ConnectionStats();
+    call = mock(Call.class);
+    Request request = new Request.Builder()
+        .url("http://example.com")
+        .tag(RequestTag.class, new RequestTag(3, 7, stats, connectionStats, null))
+        .build();
+    when(call.request()).thenReturn(request);
+  }
+
+  @Test
+  void events_recordTimestampsAndPhases() {
+    when(publisher.isCallEventsEnabled()).thenReturn(true);
+    HttpClientEventListener listener = new HttpClientEventListener(publisher);
+
+    listener.callStart(call);
+    listener.dnsStart(call, "example.com");
+    listener.dnsEnd(call, "example.com", List.of());
+    listener.requestHeadersStart(call);
+    listener.responseHeadersStart(call);
+    listener.callEnd(call);
+
+    assertTrue(listener.timestamp(CallEvent.CALL_START) > 0);
+    assertTrue(listener.elapsedNanos(CallEvent.CALL_START, CallEvent.CALL_END) >= 0);
+    assertEquals(-1, listener.elapsedNanos(CallEvent.CONNECT_START, CallEvent.CONNECT_END));
+
+    LatencySnapshot snapshot = stats.snapshot(3);
+    assertEquals(1, snapshot.getTotal().getCount());
+    assertEquals(1, snapshot.getDns().getCount());
+    assertEquals(1, snapshot.getTtfb().getCount());
+    assertEquals(0, snapshot.getConnect().getCount());
+
+    verify(publisher).registerEvent(eq(3), eq(7), eq(CallEvent.CALL_START), anyLong(), eq(0L));
+    verify(publisher).registerEvent(eq(3), eq(7), eq(CallEvent.CALL_END), anyLong(), anyLong());
+  }
+
+  @Test
+  void events_areNotPublishedWhenCallEventsDisabled() {
+    when(publisher.isCallEventsEnabled()).thenReturn(false);
+    HttpClientEventListener listener = new HttpClientEventListener(publisher);
+
+    listener.callStart(call);
+    listener.callFailed(call, new IOException("boom"));
+
+    verify(publisher, never()).registerEvent(anyInt(), anyInt(), any(), anyLong(), anyLong());
+    assertEquals(1, stats.snapshot(3).getErrors());
+  }
+
+  @Test
+  void connectionAcquired_countsNewAndReusedConnections() {
+    Connection connection = mock(Connection.class);
+    when(connection.protocol()).thenReturn(Protocol.HTTP_2);
+
+    HttpClientEventListener first = new HttpClientEventListener(publisher);
+    first.callStart(call);
+    first.connectStart(call, null, null);
+    first.connectEnd(call, null, null, Protocol.HTTP_2);
+    first.connectionAcquired(call, connection);
+
+    HttpClientEventListener second = new HttpClientEventListener(publisher);
+    second.callStart(call);
+    second.connectionAcquired(call, connection);
+
+    assertEquals(1, connectionStats.getOpened());
+    assertEquals(1, connectionStats.getReused());
+    assertEquals(Protocol.HTTP_2.toString(), connectionStats.getProtocol());
+  }
+}
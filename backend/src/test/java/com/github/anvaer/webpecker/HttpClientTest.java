@@ -0,0 +1,115 @@
+package com.github.anvaer.webpecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.github.anvaer.webpecker.httpclient.ConnectionProfile;
+import com.github.anvaer.webpecker.httpclient.HttpClient;
+import com.github.anvaer.webpecker.httpclient.RequestTag;
+import com.github.anvaer.webpecker.httpclient.RequestTemplate;
+import com.github.anvaer.webpecker.websocket.WebSocketEventPublisher;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okio.Buffer;
+
+class HttpClientTest {
+
+  private static final String URL = "http://127.0.0.1:9/";
+
+  HttpClient httpClient;
+
+  @BeforeEach
+  void setUp() {
+    OkHttpClient okHttpClient = new OkHttpClient.Builder()
+        .callTimeout(5, TimeUnit.SECONDS)
+        .build();
+    httpClient = new HttpClient(okHttpClient, mock(WebSocketEventPublisher.class));
+  }
+
+  @Test
+  void changeTimeout_appliesToNewCallsWithoutRebuilding() {
+    ConnectionProfile profile = new ConnectionProfile();
+    Call before = httpClient.getRequest(URL, new RequestTag(1, 1, null, null, null), profile);
+
+    httpClient.changeTimeout(250);
+    Call after = httpClient.getRequest(URL, new RequestTag(1, 2, null, null, null), profile);
+
+    assertEquals(TimeUnit.SECONDS.toNanos(5), before.timeout().timeoutNanos());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(250), after.timeout().timeoutNanos());
+    assertEquals(0, httpClient.getClientRebuilds());
+  }
+
+  @Test
+  void profiles_shareDerivedClientsAndStayPinnedAcrossReset() {
+    ConnectionProfile first = httpClient.newProfile("h2c", null, false);
+    ConnectionProfile second = httpClient.newProfile("h2c", null, false);
+
+    httpClient.getRequest(URL, new RequestTag(1, 1, null, null, null), first);
+    httpClient.getRequest(URL, new RequestTag(2, 1, null, null, null), second);
+    assertEquals(1, httpClient.getClientRebuilds());
+
+    httpClient.resetClient();
+    httpClient.getRequest(URL, new RequestTag(1, 2, null, null, null), first);
+    assertEquals(1, httpClient.getClientRebuilds());
+    assertEquals(1, first.getClientVersion());
+    assertEquals(2, httpClient.getClientVersion());
+
+    ConnectionProfile third = httpClient.newProfile("h2c", null, false);
+    httpClient.getRequest(URL, new RequestTag(3, 1, null, null, null), third);
+    assertEquals(2, httpClient.getClientRebuilds());
+    assertEquals(2, third.getClientVersion());
+  }
+
+  @Test
+  void template_rendersVariablesPerIteration() throws Exception {
+    RequestTemplate template = RequestTemplate.compile(
+        "post",
+        "http://127.0.0.1:9/users/${csv.user}?i=${iteration}",
+        Map.of("Content-Type", "application/json", "X-Task", "${id}", "X-Static", "yes"),
+        "{\"user\":\"${csv.user}\",\"n\":${iteration}}",
+        "user,role\nalice,admin\nbob,viewer");
+    ConnectionProfile profile = new ConnectionProfile();
+
+    Request first = httpClient.getRequest(template, new RequestTag(4, 1, null, null, null), profile).request();
+    Request second = httpClient.getRequest(template, new RequestTag(4, 2, null, null, null), profile).request();
+    Request third = httpClient.getRequest(template, new RequestTag(4, 3, null, null, null), profile).request();
+
+    assertEquals("POST", first.method());
+    assertEquals("http://127.0.0.1:9/users/alice?i=1", first.url().toString());
+    assertEquals("http://127.0.0.1:9/users/bob?i=2", second.url().toString());
+    assertEquals("http://127.0.0.1:9/users/alice?i=3", third.url().toString());
+    assertEquals("4", first.header("X-Task"));
+    assertEquals("yes", first.header("X-Static"));
+    assertEquals("{\"user\":\"bob\",\"n\":2}", bodyOf(second));
+    assertTrue(second.body().contentType().toString().startsWith("application/json"));
+  }
+
+  @Test
+  void template_sharesStaticBodyAndRejectsUnknownVariables() {
+    RequestTemplate template = RequestTemplate.compile("PUT", URL, null, "{\"static\":true}", null);
+    ConnectionProfile profile = new ConnectionProfile();
+
+    Request first = httpClient.getRequest(template, new RequestTag(1, 1, null, null, null), profile).request();
+    Request second = httpClient.getRequest(template, new RequestTag(1, 2, null, null, null), profile).request();
+
+    assertSame(first.body(), second.body());
+    assertThrows(IllegalArgumentException.class,
+        () -> RequestTemplate.compile("GET", URL + "${nope}", null, null, null));
+    assertThrows(IllegalArgumentException.class,
+        () -> RequestTemplate.compile("GET", URL, null, "body", null));
+  }
+
+  private static String bodyOf(Request request) throws Exception {
+    Buffer buffer = new Buffer();
+    request.body().writeTo(buffer);
+    return buffer.readUtf8();
+  }
+}
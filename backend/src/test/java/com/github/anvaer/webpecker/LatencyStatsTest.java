@@ -0,0 +1,92 @@
+package com.github.anvaer.webpecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.anvaer.webpecker.stats.LatencySnapshot;
+import com.github.anvaer.webpecker.stats.LatencyStats;
+
+class LatencyStatsTest {
+
+  @Test
+  void snapshot_reportsPercentilesInMicros() {
+    LatencyStats stats = new LatencyStats();
+    for (int i = 1; i <= 100; i++) {
+      stats.record(LatencyStats.Phase.TOTAL, TimeUnit.MILLISECONDS.toNanos(i));
+    }
+    stats.record(LatencyStats.Phase.DNS, TimeUnit.MILLISECONDS.toNanos(5));
+
+    LatencySnapshot snapshot = stats.snapshot(1);
+
+    assertEquals(1, snapshot.getId());
+    assertEquals(100, snapshot.getIntervalCount());
+    assertEquals(100, snapshot.getTotal().getCount());
+    assertEquals(50_000, snapshot.getTotal().getP50(), 1_000);
+    assertEquals(99_000, snapshot.getTotal().getP99(), 1_000);
+    assertEquals(100_000, snapshot.getTotal().getMax(), 1_000);
+    assertEquals(1, snapshot.getDns().getCount());
+    assertEquals(0, snapshot.getTls().getCount());
+  }
+
+  @Test
+  void snapshot_accumulatesAcrossIntervals() {
+    LatencyStats stats = new LatencyStats();
+    stats.record(LatencyStats.Phase.TOTAL, TimeUnit.MILLISECONDS.toNanos(1));
+    stats.snapshot(1);
+
+    stats.record(LatencyStats.Phase.TOTAL, TimeUnit.MILLISECONDS.toNanos(2));
+    LatencySnapshot snapshot = stats.snapshot(1);
+
+    assertEquals(1, snapshot.getIntervalCount());
+    assertEquals(2, snapshot.getTotal().getCount());
+  }
+
+  @Test
+  void snapshot_isNullWithoutNewData() {
+    LatencyStats stats = new LatencyStats();
+    assertNull(stats.snapshot(1));
+
+    stats.recordError();
+    LatencySnapshot snapshot = stats.snapshot(1);
+    assertEquals(1, snapshot.getErrors());
+    assertNull(stats.snapshot(1));
+  }
+
+  @Test
+  void snapshot_reportsBodyBytesAndReadTime() {
+    LatencyStats stats = new LatencyStats();
+    stats.recordBody(4096, TimeUnit.MILLISECONDS.toNanos(3));
+    stats.recordBody(4096, TimeUnit.MILLISECONDS.toNanos(5));
+    stats.recordInvalidBody();
+
+    LatencySnapshot snapshot = stats.snapshot(1);
+
+    assertEquals(8192, snapshot.getBodyBytes());
+    assertTrue(snapshot.getBytesPerSecond() > 0);
+    assertEquals(1, snapshot.getInvalidBodies());
+    assertEquals(2, snapshot.getBody().getCount());
+    assertEquals(5_000, snapshot.getBody().getMax(), 100);
+  }
+
+  @Test
+  void snapshot_reportsCorrectedLatencyNextToUncorrected() {
+    LatencyStats stats = new LatencyStats();
+    for (int i = 0; i < 9; i++) {
+      stats.record(LatencyStats.Phase.TOTAL, TimeUnit.MILLISECONDS.toNanos(1));
+      stats.recordCorrected(TimeUnit.MILLISECONDS.toNanos(1));
+    }
+    stats.record(LatencyStats.Phase.TOTAL, TimeUnit.MILLISECONDS.toNanos(1));
+    stats.recordCorrected(TimeUnit.MILLISECONDS.toNanos(100));
+
+    LatencySnapshot snapshot = stats.snapshot(1);
+
+    assertEquals(10, snapshot.getTotal().getCount());
+    assertEquals(1_000, snapshot.getTotal().getMax(), 100);
+    assertEquals(10, snapshot.getCorrected().getCount());
+    assertEquals(1_000, snapshot.getCorrected().getP50(), 100);
+    assertEquals(100_000, snapshot.getCorrected().getMax(), 1_000);
+  }
+}
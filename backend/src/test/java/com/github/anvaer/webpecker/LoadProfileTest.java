@@ -0,0 +1,88 @@
+package com.github.anvaer.webpecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.github.anvaer.webpecker.requestloop.LoadProfile;
+import com.github.anvaer.webpecker.requestloop.LoadProfileScheduler;
+import com.github.anvaer.webpecker.requestloop.RequestLoopTask;
+import com.github.anvaer.webpecker.websocket.LoadStageRequest;
+
+class LoadProfileTest {
+
+  @Test
+  void compile_expandsRampIntoStepsAndKeepsHoldsAndSpikes() {
+    LoadProfile profile = LoadProfile.compile(List.of(
+        stage(null, 0.0, 100.0, 1000L, 4),
+        stage("spike", 500.0, null, 200L, null),
+        stage(null, 50.0, null, 300L, null)));
+
+    List<LoadProfile.Stage> stages = profile.getStages();
+    assertEquals(6, stages.size());
+    assertEquals(25.0, stages.get(0).rate());
+    assertEquals(100.0, stages.get(3).rate());
+    assertEquals(LoadProfile.StageType.RAMP, stages.get(3).type());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(250), stages.get(3).durationNanos());
+    assertEquals(LoadProfile.StageType.SPIKE, stages.get(4).type());
+    assertEquals(LoadProfile.StageType.HOLD, stages.get(5).type());
+    assertEquals(25.0, profile.getInitialRate());
+
+    assertThrows(IllegalArgumentException.class,
+        () -> LoadProfile.compile(List.of(stage(null, 0.0, null, 100L, null))));
+    assertThrows(IllegalArgumentException.class,
+        () -> LoadProfile.compile(List.of(stage("hold", 10.0, null, null, null))));
+  }
+
+  @Test
+  void scheduler_appliesStagesAndStopsTaskWhenProfileEnds() throws Exception {
+    ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    BlockingQueue<LoadProfileScheduler.Transition> transitions = new LinkedBlockingQueue<>();
+    LoadProfileScheduler scheduler = new LoadProfileScheduler(executor, transitions::add);
+    RequestLoopTask task = mock(RequestLoopTask.class);
+    when(task.getCompleted()).thenReturn(0L, 3L, 9L);
+    try {
+      scheduler.start(7, task, LoadProfile.compile(List.of(
+          stage(null, 10.0, null, 50L, null),
+          stage("spike", 40.0, null, 50L, null))));
+
+      LoadProfileScheduler.Transition first = transitions.poll(1, TimeUnit.SECONDS);
+      LoadProfileScheduler.Transition second = transitions.poll(1, TimeUnit.SECONDS);
+      LoadProfileScheduler.Transition done = transitions.poll(1, TimeUnit.SECONDS);
+
+      assertEquals(0, first.stage());
+      assertEquals("hold", first.type());
+      assertEquals("spike", second.type());
+      assertEquals(10.0, second.previousRate());
+      assertTrue(second.achievedRate() > 0);
+      assertTrue(second.elapsedMillis() >= 50);
+      assertEquals("done", done.type());
+      assertEquals(9, done.completed());
+      verify(task).setRate(10.0);
+      verify(task).setRate(40.0);
+      verify(task).stop();
+      assertEquals(0, scheduler.getActive());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static LoadStageRequest stage(String type, Double rate, Double toRate, Long durationMillis,
+      Integer steps) {
+    LoadStageRequest stage = new LoadStageRequest();
+    stage.setType(type);
+    stage.setRate(rate);
+    stage.setToRate(toRate);
+    stage.setDurationMillis(durationMillis);
+    stage.setSteps(steps);
+    return stage;
+  }
+}
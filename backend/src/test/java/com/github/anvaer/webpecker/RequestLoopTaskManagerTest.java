@@ -1,6 +1,8 @@
 package com.github.anvaer.webpecker;
 
+import com.github.anvaer.webpecker.cluster.ClusterCoordinator;
 import com.github.anvaer.webpecker.httpclient.HttpClient;
+import com.github.anvaer.webpecker.recorder.RunRecorder;
 import com.github.anvaer.webpecker.requestloop.RequestLoopTask;
 import com.github.anvaer.webpecker.requestloop.RequestLoopTaskManager;
 import com.github.anvaer.webpecker.websocket.WebSocketEventPublisher;
@@ -10,11 +12,24 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.*;
 import org.springframework.web.socket.WebSocketSession;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Call;
+import okhttp3.Callback;
+
+import java.io.IOException;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -31,7 +46,8 @@ class RequestLoopTaskManagerTest {
     httpClient = mock(HttpClient.class);
     session = mock(WebSocketSession.class);
     publisher = mock(WebSocketEventPublisher.class);
-    manager = new RequestLoopTaskManager(httpClient, publisher, new ObjectMapper());
+    manager = new RequestLoopTaskManager(httpClient, publisher, new ObjectMapper(), mock(RunRecorder.class),
+        mock(ClusterCoordinator.class));
 
     // setFieldVisible(manager, "futures");
     // setFieldVisible(manager, "tasks");
@@ -57,6 +73,39 @@ class RequestLoopTaskManagerTest {
     assertTrue(getTasks(manager).containsKey(1));
   }
 
+  @Test
+  void testSubmitRequest_distributesOnlyOnOptInWithSupportedSettings() {
+    ClusterCoordinator coordinator = mock(ClusterCoordinator.class);
+    when(coordinator.isEnabled()).thenReturn(true);
+    when(coordinator.submit(anyInt(), anyString(), anyInt(), anyDouble(), anyLong(), any())).thenReturn(true);
+    manager.shutdown();
+    manager = new RequestLoopTaskManager(httpClient, publisher, new ObjectMapper(), mock(RunRecorder.class),
+        coordinator);
+
+    WebSocketRequest local = new WebSocketRequest();
+    local.setId(1);
+    local.setUrl("http://example.com");
+    manager.submitRequest(local, session);
+
+    WebSocketRequest templated = new WebSocketRequest();
+    templated.setId(2);
+    templated.setUrl("http://example.com/${i}");
+    templated.setDistributed(true);
+    manager.submitRequest(templated, session);
+
+    WebSocketRequest distributed = new WebSocketRequest();
+    distributed.setId(3);
+    distributed.setUrl("http://example.com");
+    distributed.setDistributed(true);
+    manager.submitRequest(distributed, session);
+
+    assertTrue(getTasks(manager).containsKey(1));
+    assertTrue(getTasks(manager).containsKey(2));
+    assertFalse(getTasks(manager).containsKey(3));
+    verify(coordinator, times(1)).submit(anyInt(), anyString(), anyInt(), anyDouble(), anyLong(), any());
+    verify(coordinator).submit(eq(3), eq("http://example.com"), anyInt(), anyDouble(), anyLong(), eq(session));
+  }
+
   @Test
   void testCancelRequest_byId_cancelsTaskAndFuture() {
     WebSocketRequest req = mock(WebSocketRequest.class);
@@ -111,6 +160,160 @@ class RequestLoopTaskManagerTest {
     verify(httpClient).changeTimeout(999L);
   }
 
+  @Test
+  void testVirtualMode_capsConcurrentTasksAndCancels() throws Exception {
+    Call call = mock(Call.class);
+    when(httpClient.getRequest(anyString(), any(), any())).thenReturn(call);
+    when(call.execute()).thenAnswer(inv -> {
+      Thread.sleep(10_000);
+      return null;
+    });
+
+    WebSocketRequest config = mock(WebSocketRequest.class);
+    when(config.getMaxConcurrent()).thenReturn(1);
+    when(config.getExecutionMode()).thenReturn("virtual");
+    manager.updateConfig(config);
+
+    for (int id = 1; id <= 2; id++) {
+      WebSocketRequest req = mock(WebSocketRequest.class);
+      when(req.getId()).thenReturn(id);
+      when(req.getRepeat()).thenReturn(1);
+      when(req.getUrl()).thenReturn("http://example.com");
+      manager.submitRequest(req, session);
+    }
+
+    verify(httpClient, timeout(1000).times(1)).getRequest(anyString(), any(), any());
+    Thread.sleep(100);
+    verify(httpClient, times(1)).getRequest(anyString(), any(), any());
+
+    manager.cancelRequest(1);
+
+    verify(httpClient, timeout(1000).times(2)).getRequest(anyString(), any(), any());
+    assertTrue(getTasks(manager).containsKey(2));
+    assertFalse(getTasks(manager).containsKey(1));
+  }
+
+  @Test
+  void testFairMode_interleavesProbeWithLongLoop() throws Exception {
+    BlockingQueue<Callback> callbacks = new LinkedBlockingQueue<>();
+    Call call = mock(Call.class);
+    when(httpClient.getRequest(anyString(), any(), any())).thenReturn(call);
+    doAnswer(inv -> callbacks.add(inv.getArgument(0))).when(call).enqueue(any());
+
+    WebSocketRequest config = mock(WebSocketRequest.class);
+    when(config.getDelay()).thenReturn(0L);
+    when(config.getMaxConcurrent()).thenReturn(1);
+    when(config.getExecutionMode()).thenReturn("fair");
+    manager.updateConfig(config);
+
+    WebSocketRequest soak = mock(WebSocketRequest.class);
+    when(soak.getId()).thenReturn(1);
+    when(soak.getRepeat()).thenReturn(1000);
+    when(soak.getUrl()).thenReturn("http://soak");
+    manager.submitRequest(soak, session);
+
+    WebSocketRequest probe = mock(WebSocketRequest.class);
+    when(probe.getId()).thenReturn(2);
+    when(probe.getRepeat()).thenReturn(2);
+    when(probe.getUrl()).thenReturn("http://probe");
+    when(probe.getPriority()).thenReturn(5);
+    manager.submitRequest(probe, session);
+
+    assertEquals(1, callbacks.size());
+    assertEquals(1, getTasks(manager).get(2).getState().getQueuePosition());
+
+    for (int i = 0; i < 4; i++) {
+      callbacks.poll(1, TimeUnit.SECONDS).onFailure(call, new IOException("boom"));
+    }
+
+    verify(httpClient, times(2)).getRequest(eq("http://probe"), any(), any());
+    assertEquals("done", getTasks(manager).get(2).getState().getState());
+    assertEquals(0, getTasks(manager).get(2).getState().getQueuePosition());
+    assertEquals("running", getTasks(manager).get(1).getState().getState());
+    assertEquals(1, callbacks.size());
+  }
+
+  @Test
+  void testFairMode_cancelMidCallClosesLaneAndPublishesCancelled() throws Exception {
+    BlockingQueue<Callback> callbacks = new LinkedBlockingQueue<>();
+    Call call = mock(Call.class);
+    when(httpClient.getRequest(anyString(), any(), any())).thenReturn(call);
+    doAnswer(inv -> callbacks.add(inv.getArgument(0))).when(call).enqueue(any());
+
+    WebSocketRequest config = mock(WebSocketRequest.class);
+    when(config.getDelay()).thenReturn(0L);
+    when(config.getMaxConcurrent()).thenReturn(1);
+    when(config.getExecutionMode()).thenReturn("fair");
+    manager.updateConfig(config);
+
+    WebSocketRequest req = mock(WebSocketRequest.class);
+    when(req.getId()).thenReturn(1);
+    when(req.getRepeat()).thenReturn(10);
+    when(req.getUrl()).thenReturn("http://fair");
+    manager.submitRequest(req, session);
+    RequestLoopTask task = getTasks(manager).get(1);
+    Callback inFlight = callbacks.poll(1, TimeUnit.SECONDS);
+
+    manager.cancelRequest(1);
+    inFlight.onFailure(call, new IOException("Canceled"));
+
+    assertEquals("cancelled", task.getState().getState());
+    verify(publisher).updateState(session, 1, "cancelled");
+    Object fairScheduler = getPrivate(manager, "fairScheduler");
+    var lanes = fairScheduler.getClass().getDeclaredField("lanes");
+    lanes.setAccessible(true);
+    assertTrue(((List<?>) lanes.get(fairScheduler)).isEmpty());
+  }
+
+  @Test
+  void testAsyncMode_opensRunLogOnlyWhenTaskStarts() {
+    RunRecorder recorder = mock(RunRecorder.class);
+    manager.shutdown();
+    manager = new RequestLoopTaskManager(httpClient, publisher, new ObjectMapper(), recorder,
+        mock(ClusterCoordinator.class));
+    Call call = mock(Call.class);
+    when(httpClient.getRequest(anyString(), any(), any())).thenReturn(call);
+
+    WebSocketRequest config = mock(WebSocketRequest.class);
+    when(config.getDelay()).thenReturn(0L);
+    when(config.getMaxConcurrent()).thenReturn(1);
+    when(config.getExecutionMode()).thenReturn("async");
+    manager.updateConfig(config);
+
+    for (int id = 1; id <= 2; id++) {
+      WebSocketRequest req = mock(WebSocketRequest.class);
+      when(req.getId()).thenReturn(id);
+      when(req.getRepeat()).thenReturn(5);
+      when(req.getUrl()).thenReturn("http://queued");
+      manager.submitRequest(req, session);
+    }
+    manager.cancelRequest(2);
+
+    verify(recorder).start(eq(1), anyString());
+    verify(recorder, never()).start(eq(2), anyString());
+  }
+
+  @Test
+  void testBindTo_registersPerTaskMetersUntilCancelled() {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    manager.bindTo(registry);
+
+    WebSocketRequest req = mock(WebSocketRequest.class);
+    when(req.getId()).thenReturn(4);
+    when(req.getRepeat()).thenReturn(1);
+    when(req.getUrl()).thenReturn("http://example.com");
+    manager.submitRequest(req, session);
+
+    assertEquals(1, registry.get("webpecker.tasks").gauge().value());
+    assertNotNull(registry.find("webpecker.task.iterations").tag("task", "4").functionCounter());
+    assertNotNull(registry.find("webpecker.executor.queue").tag("mode", "fair").gauge());
+
+    manager.cancelRequest(4);
+
+    assertNull(registry.find("webpecker.task.iterations").tag("task", "4").functionCounter());
+    assertEquals(0, registry.get("webpecker.tasks").gauge().value());
+  }
+
   @Test
   void testRestoreSettings_callsPublisher() {
     manager.restoreSettings(session);
@@ -1,14 +1,20 @@
 package com.github.anvaer.webpecker;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.IOException;
 import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -17,11 +23,15 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.web.socket.WebSocketSession;
 
 import com.github.anvaer.webpecker.httpclient.HttpClient;
+import com.github.anvaer.webpecker.requestloop.BodyMode;
 import com.github.anvaer.webpecker.requestloop.RequestLoopTask;
+import com.github.anvaer.webpecker.requestloop.RequestLoopTaskState;
 import com.github.anvaer.webpecker.websocket.WebSocketEventPublisher;
 
 import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 @ExtendWith(MockitoExtension.class)
 class RequestLoopTaskTest {
@@ -47,7 +57,7 @@ class RequestLoopTaskTest {
 
   @Test
   void call_executesAllIterationsSuccessfully() throws Exception {
-    when(httpClient.getRequest(anyString(), anyString())).thenReturn(call);
+    when(httpClient.getRequest(anyString(), any(), any())).thenReturn(call);
     when(call.execute()).thenReturn(response);
     when(response.code()).thenReturn(200);
 
@@ -67,13 +77,35 @@ class RequestLoopTaskTest {
     verify(response, times(2)).close();
   }
 
+  @Test
+  void call_drainsBodiesAndFlagsChecksumChanges() throws Exception {
+    when(httpClient.getRequest(anyString(), any(), any())).thenReturn(call);
+    when(call.execute()).thenReturn(response);
+    when(response.code()).thenReturn(200);
+    when(response.body()).thenReturn(
+        ResponseBody.create("hello", null),
+        ResponseBody.create("hello", null),
+        ResponseBody.create("hellp", null));
+
+    RequestLoopTask task = new RequestLoopTask(
+        1, 0, 3, "http://example.com", session, httpClient, publisher);
+    task.setBodyMode(BodyMode.CRC32, null);
+
+    task.call();
+
+    RequestLoopTaskState state = task.getState();
+    assertEquals(15, state.getBodyBytes());
+    assertEquals(1, state.getInvalidBodies());
+    verify(publisher).updateIteration(session, 1, 3, "200");
+  }
+
   // -------------------------
   // SOCKET TIMEOUT
   // -------------------------
 
   @Test
   void call_handlesSocketTimeout() throws Exception {
-    when(httpClient.getRequest(anyString(), anyString())).thenReturn(call);
+    when(httpClient.getRequest(anyString(), any(), any())).thenReturn(call);
     when(call.execute()).thenThrow(new SocketTimeoutException());
 
     RequestLoopTask task = new RequestLoopTask(
@@ -92,7 +124,7 @@ class RequestLoopTaskTest {
 
   @Test
   void call_handlesNetworkError() throws Exception {
-    when(httpClient.getRequest(anyString(), anyString())).thenReturn(call);
+    when(httpClient.getRequest(anyString(), any(), any())).thenReturn(call);
     when(call.execute()).thenThrow(new IOException("boom"));
 
     RequestLoopTask task = new RequestLoopTask(
@@ -110,7 +142,7 @@ class RequestLoopTaskTest {
 
   @Test
   void cancelCall_cancelsHttpCall() throws Exception {
-    when(httpClient.getRequest(anyString(), anyString())).thenReturn(call);
+    when(httpClient.getRequest(anyString(), any(), any())).thenReturn(call);
     when(call.execute()).thenAnswer(inv -> {
       Thread.sleep(1000);
       return response;
@@ -133,7 +165,7 @@ class RequestLoopTaskTest {
 
   @Test
   void cancelCall_updatesStateToCancelled() throws Exception {
-    when(httpClient.getRequest(anyString(), anyString())).thenReturn(call);
+    when(httpClient.getRequest(anyString(), any(), any())).thenReturn(call);
     when(call.execute()).thenThrow(new IOException("cancelled"));
 
     RequestLoopTask task = new RequestLoopTask(
@@ -150,7 +182,7 @@ class RequestLoopTaskTest {
 
   @Test
   void call_stopsWhenThreadInterrupted() throws Exception {
-    when(httpClient.getRequest(anyString(), anyString())).thenReturn(call);
+    when(httpClient.getRequest(anyString(), any(), any())).thenReturn(call);
     when(call.execute()).thenAnswer(inv -> {
       Thread.currentThread().interrupt();
       return response;
@@ -165,6 +197,178 @@ class RequestLoopTaskTest {
     verify(publisher).updateState(session, 5, "cancelled");
   }
 
+  // -------------------------
+  // CONSTANT RATE
+  // -------------------------
+
+  @Test
+  void call_atConstantRate_spacesSends() throws Exception {
+    when(httpClient.getRequest(anyString(), any(), any())).thenReturn(call);
+    when(call.execute()).thenReturn(response);
+    when(response.code()).thenReturn(200);
+
+    RequestLoopTask task = new RequestLoopTask(
+        9, 0, 5, "http://example.com", session, httpClient, publisher);
+    task.setRate(100);
+
+    long start = System.nanoTime();
+    task.call();
+
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+    verify(publisher).updateState(session, 9, "done");
+    assertEquals(5, task.getState().getIteration());
+  }
+
+  @Test
+  void call_atConstantRate_reportsLateSends() throws Exception {
+    when(httpClient.getRequest(anyString(), any(), any())).thenReturn(call);
+    when(call.execute()).thenAnswer(inv -> {
+      Thread.sleep(30);
+      return response;
+    });
+    when(response.code()).thenReturn(200);
+
+    RequestLoopTask task = new RequestLoopTask(
+        10, 0, 3, "http://example.com", session, httpClient, publisher);
+    task.setRate(100);
+
+    task.call();
+
+    verify(publisher).updateIteration(eq(session), eq(10), eq(2), eq("200"), anyLong());
+    verify(publisher).updateIteration(eq(session), eq(10), eq(3), eq("200"), anyLong());
+    assertEquals(2, task.getState().getLateSends());
+  }
+
+  // -------------------------
+  // ASYNC ENGINE
+  // -------------------------
+
+  @Test
+  void start_executesAllIterationsAsynchronously() throws Exception {
+    when(httpClient.getRequest(anyString(), any(), any())).thenReturn(call);
+    doAnswer(inv -> {
+      inv.<Callback>getArgument(0).onResponse(call, response);
+      return null;
+    }).when(call).enqueue(any());
+    when(response.code()).thenReturn(200);
+
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    RequestLoopTask task = new RequestLoopTask(
+        7, 5, 3, "http://example.com", session, httpClient, publisher);
+
+    task.start(scheduler).get(1, TimeUnit.SECONDS);
+
+    verify(publisher).updateIteration(session, 7, 1, "200");
+    verify(publisher).updateIteration(session, 7, 3, "200");
+    verify(publisher).updateState(session, 7, "done");
+    verify(response, times(3)).close();
+    scheduler.shutdown();
+  }
+
+  @Test
+  void start_recordsInvalidRequestAsFailedIteration() throws Exception {
+    when(httpClient.getRequest(anyString(), any(), any())).thenThrow(new IllegalArgumentException("bad url"));
+
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    RequestLoopTask task = new RequestLoopTask(
+        8, 0, 3, "http://example.com", session, httpClient, publisher);
+
+    task.start(scheduler).get(1, TimeUnit.SECONDS);
+
+    verify(publisher).updateIteration(session, 8, 1, "network error");
+    verify(publisher).updateIteration(session, 8, 3, "network error");
+    verify(publisher).updateState(session, 8, "done");
+    assertEquals(3, task.getLatencySnapshot().getErrors());
+    scheduler.shutdown();
+  }
+
+  @Test
+  void start_cancelCall_stopsPendingIteration() throws Exception {
+    when(httpClient.getRequest(anyString(), any(), any())).thenReturn(call);
+    doAnswer(inv -> {
+      inv.<Callback>getArgument(0).onFailure(call, new IOException("boom"));
+      return null;
+    }).when(call).enqueue(any());
+
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    RequestLoopTask task = new RequestLoopTask(
+        8, 10_000, 10, "http://example.com", session, httpClient, publisher);
+
+    CompletableFuture<Void> completion = task.start(scheduler);
+    verify(publisher).updateIteration(session, 8, 1, "network error");
+
+    task.cancelCall();
+    completion.get(1, TimeUnit.SECONDS);
+
+    verify(publisher).updateState(session, 8, "cancelled");
+    verify(httpClient, times(1)).getRequest(anyString(), any(), any());
+    scheduler.shutdown();
+  }
+
+  // -------------------------
+  // PAUSE / RESUME
+  // -------------------------
+
+  @Test
+  void call_pauseHoldsLoopUntilResumed() throws Exception {
+    RequestLoopTask task = new RequestLoopTask(
+        12, 0, 5, "http://example.com", session, httpClient, publisher);
+    task.setRate(200);
+    when(httpClient.getRequest(anyString(), any(), any())).thenReturn(call);
+    when(call.execute()).thenAnswer(inv -> {
+      if (task.getIteration() == 1) {
+        task.pause();
+      }
+      return response;
+    });
+    when(response.code()).thenReturn(200);
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    Future<?> future = executor.submit(task);
+    verify(publisher, timeout(1000)).updateState(session, 12, "paused");
+    Thread.sleep(50);
+    assertEquals(1, task.getIteration());
+    assertTrue(task.isPaused());
+
+    task.setRate(1000);
+    task.resume();
+    future.get(1, TimeUnit.SECONDS);
+
+    assertEquals(5, task.getState().getIteration());
+    assertEquals(1000, task.getState().getRate());
+    verify(publisher, times(2)).updateState(session, 12, "running");
+    verify(publisher).updateState(session, 12, "done");
+    executor.shutdown();
+  }
+
+  @Test
+  void start_pauseParksPendingIterationAndResumeAppliesNewDelay() throws Exception {
+    when(httpClient.getRequest(anyString(), any(), any())).thenReturn(call);
+    doAnswer(inv -> {
+      inv.<Callback>getArgument(0).onResponse(call, response);
+      return null;
+    }).when(call).enqueue(any());
+    when(response.code()).thenReturn(200);
+
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    RequestLoopTask task = new RequestLoopTask(
+        13, 10_000, 3, "http://example.com", session, httpClient, publisher);
+
+    CompletableFuture<Void> completion = task.start(scheduler);
+    verify(publisher).updateIteration(session, 13, 1, "200");
+
+    task.pause();
+    assertEquals("paused", task.getState().getState());
+    task.setDelay(0);
+    task.resume();
+    completion.get(1, TimeUnit.SECONDS);
+
+    verify(publisher).updateIteration(session, 13, 3, "200");
+    verify(publisher).updateState(session, 13, "done");
+    assertEquals(3, task.getLatencySnapshot().getCorrected().getCount());
+    scheduler.shutdown();
+  }
+
   // -------------------------
   // STATE SNAPSHOT
   // -------------------------
@@ -0,0 +1,73 @@
+package com.github.anvaer.webpecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.anvaer.webpecker.recorder.RunInfo;
+import com.github.anvaer.webpecker.recorder.RunLog;
+import com.github.anvaer.webpecker.recorder.RunRecorder;
+import com.github.anvaer.webpecker.stats.CallTimings;
+import com.github.anvaer.webpecker.stats.LatencyStats;
+
+class RunRecorderTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void finishedRun_isListedAndExportedAsCsv() throws Exception {
+    RunRecorder recorder = new RunRecorder(dir.toString(), 4 * 48, true, new ObjectMapper());
+    RunLog run = recorder.start(7, "http://example.com");
+    CallTimings timings = new CallTimings();
+    timings.record(LatencyStats.Phase.TOTAL, TimeUnit.MILLISECONDS.toNanos(12));
+    timings.record(LatencyStats.Phase.TTFB, TimeUnit.MILLISECONDS.toNanos(9));
+    for (int i = 1; i <= 10; i++) {
+      run.append(i, i == 5 ? -3 : 200, 0, timings);
+    }
+    run.finish("done");
+
+    RunRecorder restarted = new RunRecorder(dir.toString(), 4 * 48, true, new ObjectMapper());
+    List<RunInfo> runs = restarted.listRuns();
+    assertEquals(1, runs.size());
+    RunInfo info = runs.get(0);
+    assertEquals(run.getRunId(), info.getRunId());
+    assertEquals("done", info.getState());
+    assertEquals(10, info.getRecords());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    restarted.exportCsv(restarted.findRun(info.getRunId()), out);
+    String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+    assertEquals(11, lines.length);
+    assertTrue(lines[1].startsWith("1,"));
+    assertTrue(lines[1].contains(",200,12000,-1,-1,-1,9000,-1,0"));
+    assertTrue(lines[5].contains(",network error,"));
+  }
+
+  @Test
+  void unfinishedRun_isReportedAsInterruptedAndExportedAsJson() throws Exception {
+    RunRecorder recorder = new RunRecorder(dir.toString(), 1024, true, new ObjectMapper());
+    RunLog run = recorder.start(1, "http://example.com");
+    run.append(1, 404, 250, null);
+
+    RunRecorder restarted = new RunRecorder(dir.toString(), 1024, true, new ObjectMapper());
+    RunInfo info = restarted.findRun(run.getRunId());
+    assertEquals("interrupted", info.getState());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    restarted.exportJson(info, out);
+    String json = out.toString(StandardCharsets.UTF_8);
+    assertTrue(json.startsWith("[{\"iteration\":1,"));
+    assertTrue(json.contains("\"result\":\"404\""));
+    assertTrue(json.contains("\"sendLagMicros\":250}]"));
+    assertNull(restarted.findRun("../etc"));
+  }
+}
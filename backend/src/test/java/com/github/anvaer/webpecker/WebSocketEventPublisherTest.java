@@ -0,0 +1,294 @@
+package com.github.anvaer.webpecker;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.github.anvaer.webpecker.httpclient.CallEvent;
+import com.github.anvaer.webpecker.websocket.WebSocketEventPublisher;
+
+class WebSocketEventPublisherTest {
+
+  WebSocketEventPublisher publisher;
+  WebSocketSession session;
+  List<WebSocketMessage<?>> sent;
+  ByteArrayOutputStream binary;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    publisher = new WebSocketEventPublisher();
+    session = mock(WebSocketSession.class);
+    sent = new CopyOnWriteArrayList<>();
+    binary = new ByteArrayOutputStream();
+    when(session.getId()).thenReturn("s1");
+    when(session.isOpen()).thenReturn(true);
+    doAnswer(inv -> {
+      WebSocketMessage<?> msg = inv.getArgument(0);
+      sent.add(msg);
+      if (msg instanceof BinaryMessage binaryMessage) {
+        ByteBuffer payload = binaryMessage.getPayload();
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        synchronized (binary) {
+          binary.write(bytes);
+        }
+      }
+      return null;
+    }).when(session).sendMessage(any());
+  }
+
+  @AfterEach
+  void tearDown() {
+    publisher.shutdown();
+  }
+
+  @Test
+  void jsonSession_receivesTextBatches() throws Exception {
+    publisher.updateState(session, 1, "running");
+    publisher.updateIteration(session, 1, 2, "200");
+
+    verify(session, timeout(1000).atLeastOnce()).sendMessage(any(TextMessage.class));
+    String payload = ((TextMessage) sent.get(0)).getPayload();
+    assertTrue(payload.contains("\"state\":\"running\""));
+    assertTrue(sent.stream().noneMatch(m -> m instanceof BinaryMessage));
+  }
+
+  @Test
+  void binarySession_receivesFixedLayoutRecords() throws Exception {
+    when(session.getAcceptedProtocol()).thenReturn(WebSocketEventPublisher.BINARY_PROTOCOL);
+
+    publisher.updateState(session, 1, "running");
+    publisher.updateIteration(session, 1, 2, "503");
+    publisher.registerEvent(1, 2, CallEvent.CALL_END, 1234L, 56L);
+
+    ByteBuffer records = awaitBinary(3 * 24);
+    assertEquals(2, records.get(0));
+    assertEquals(2, records.getInt(8));
+    assertEquals(503, records.getInt(12));
+
+    assertEquals(1, records.get(24));
+    assertEquals(CallEvent.CALL_END.ordinal(), records.get(25));
+    assertEquals(56, records.getInt(36));
+    assertEquals(1234L, records.getLong(40));
+
+    assertEquals(3, records.get(48));
+    assertEquals(2, records.get(49));
+    assertEquals(1, records.getInt(52));
+
+    assertTrue(sent.stream().noneMatch(m -> m instanceof TextMessage));
+  }
+
+  @Test
+  void overflow_dropsOldestAndReportsDrops() throws Exception {
+    publisher.shutdown();
+    publisher = new WebSocketEventPublisher(16, "drop_oldest");
+    when(session.isOpen()).thenReturn(false);
+
+    for (int i = 1; i <= 101; i++) {
+      publisher.updateIteration(session, 1, i, "200");
+    }
+    assertEquals(16, publisher.getBufferedEvents());
+    assertEquals(85, publisher.getDroppedEvents());
+
+    when(session.isOpen()).thenReturn(true);
+    publisher.registerSession(session);
+    verify(session, timeout(1000).atLeastOnce()).sendMessage(any());
+    String payloads = sent.stream()
+        .map(m -> ((TextMessage) m).getPayload())
+        .reduce("", String::concat);
+    assertTrue(payloads.contains("\"dropped\":85"));
+    assertTrue(payloads.contains("\"iteration\":101"));
+    assertFalse(payloads.contains("\"iteration\":85,"));
+  }
+
+  @Test
+  void slowSession_doesNotStallOtherSessions() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(inv -> {
+      release.await();
+      return null;
+    }).when(session).sendMessage(any());
+    WebSocketSession fast = mockSession("s2");
+
+    publisher.registerSession(session);
+    publisher.registerSession(fast);
+    for (int i = 1; i <= 5; i++) {
+      publisher.updateIteration(session, 1, i, "200");
+      Thread.sleep(150);
+    }
+
+    verify(fast, timeout(1000).atLeast(3)).sendMessage(any(TextMessage.class));
+    assertEquals(2, publisher.getSessionCount());
+    release.countDown();
+  }
+
+  @Test
+  void subscribedSession_receivesOnlyItsTasks() throws Exception {
+    WebSocketSession subscriber = mockSession("s2");
+    List<String> received = new CopyOnWriteArrayList<>();
+    doAnswer(inv -> {
+      received.add(((TextMessage) inv.getArgument(0)).getPayload());
+      return null;
+    }).when(subscriber).sendMessage(any());
+
+    publisher.registerSession(session);
+    publisher.subscribe(subscriber, List.of(2));
+    publisher.updateIteration(session, 1, 1, "200");
+    publisher.updateIteration(session, 2, 1, "404");
+
+    verify(subscriber, timeout(1000).atLeastOnce()).sendMessage(any());
+    verify(session, timeout(1000).atLeastOnce()).sendMessage(any());
+    String payloads = String.join("", received);
+    assertTrue(payloads.contains("\"id\":2"));
+    assertFalse(payloads.contains("\"id\":1"));
+  }
+
+  @Test
+  void resync_replaysMissedEventsWithTaskSnapshot() throws Exception {
+    publisher.registerSession(session);
+    publisher.updateIteration(session, 1, 1, "200");
+    publisher.updateIteration(session, 1, 2, "200");
+    long seen = awaitSequence(2);
+
+    publisher.updateIteration(session, 1, 3, "503");
+    publisher.updateState(session, 1, "done");
+    awaitSequence(seen + 2);
+
+    WebSocketSession reconnected = mockSession("s2");
+    List<String> received = new CopyOnWriteArrayList<>();
+    doAnswer(inv -> {
+      received.add(((TextMessage) inv.getArgument(0)).getPayload());
+      return null;
+    }).when(reconnected).sendMessage(any());
+    publisher.resync(reconnected, publisher.getEpoch(), seen, () -> "[{\"id\":1,\"iteration\":3}]");
+
+    verify(reconnected, timeout(1000).atLeastOnce()).sendMessage(any());
+    String payload = received.get(0);
+    assertTrue(payload.contains("\"fromSeq\":" + seen));
+    assertTrue(payload.contains("\"tasks\":[{\"id\":1,\"iteration\":3}]"));
+    assertTrue(payload.contains("\"iteration\":3,\"result\":\"503\""));
+    assertTrue(payload.contains("\"state\":\"done\""));
+    assertFalse(payload.contains("\"iteration\":2,"));
+    assertEquals(1, publisher.getResyncDeltas());
+  }
+
+  @Test
+  void resync_sendsSnapshotForUnknownEpoch() throws Exception {
+    publisher.resync(session, 42L, 1L, () -> "[{\"id\":7}]");
+
+    verify(session, timeout(1000).atLeastOnce()).sendMessage(any());
+    String payload = ((TextMessage) sent.get(0)).getPayload();
+    assertTrue(payload.startsWith("[{\"snapshot\":{\"epoch\":" + publisher.getEpoch()));
+    assertTrue(payload.contains("\"tasks\":[{\"id\":7}]"));
+    assertEquals(1, publisher.getResyncSnapshots());
+  }
+
+  @Test
+  void coalescedTask_sendsOneProgressDeltaPerFlush() throws Exception {
+    publisher.setRawProgress(1, false);
+    when(session.isOpen()).thenReturn(false);
+    for (int i = 1; i <= 50; i++) {
+      publisher.updateIteration(session, 1, i, i % 10 == 0 ? "503" : "200");
+    }
+    publisher.updateIteration(session, 1, 51, "timeout");
+    publisher.updateIteration(session, 2, 1, "200");
+    when(session.isOpen()).thenReturn(true);
+    publisher.registerSession(session);
+
+    verify(session, timeout(1000).atLeastOnce()).sendMessage(any());
+    String payloads = sent.stream()
+        .map(m -> ((TextMessage) m).getPayload())
+        .reduce("", String::concat);
+    assertTrue(payloads.contains(
+        "{\"progress\":[{\"id\":1,\"iteration\":51,\"completed\":51,"));
+    assertTrue(payloads.contains("\"200\":45"));
+    assertTrue(payloads.contains("\"503\":5"));
+    assertTrue(payloads.contains("\"errors\":{\"timeout\":1}"));
+    assertFalse(payloads.contains("\"id\":1,\"iteration\":50,\"result\""));
+    assertTrue(payloads.contains("{\"id\":2,\"iteration\":1,\"result\":\"200\"}"));
+    assertFalse(publisher.isRawProgress(1));
+
+    publisher.setRawProgress(1, true);
+    assertTrue(publisher.isRawProgress(1));
+  }
+
+  @Test
+  void startProgress_resetsCountsForReusedIdAndDoneRetiresAggregator() throws Exception {
+    when(session.isOpen()).thenReturn(false);
+    publisher.startProgress(3, false);
+    publisher.updateIteration(session, 3, 1, "200");
+    publisher.updateIteration(session, 3, 2, "200");
+    publisher.updateState(session, 3, "done");
+    publisher.startProgress(3, false);
+    publisher.updateIteration(session, 3, 1, "500");
+    when(session.isOpen()).thenReturn(true);
+    publisher.registerSession(session);
+
+    verify(session, timeout(1000).atLeastOnce()).sendMessage(any());
+    String payloads = sent.stream()
+        .map(m -> ((TextMessage) m).getPayload())
+        .reduce("", String::concat);
+    assertTrue(payloads.contains("{\"id\":3,\"iteration\":1,\"completed\":1,\"statuses\":{\"500\":1}"));
+    assertFalse(publisher.isRawProgress(3));
+
+    publisher.updateState(session, 3, "done");
+    assertTrue(publisher.isRawProgress(3));
+  }
+
+  @Test
+  void textAndStateBuffers_areBoundedWithoutSessions() {
+    for (int i = 0; i < 300; i++) {
+      publisher.publishEvent("{\"n\":" + i + "}");
+    }
+    for (int i = 0; i < 5000; i++) {
+      publisher.updateState(null, i, "running");
+    }
+
+    assertEquals(300 - 256 + 5000 - 4096, publisher.getDroppedEvents());
+  }
+
+  private WebSocketSession mockSession(String id) {
+    WebSocketSession other = mock(WebSocketSession.class);
+    when(other.getId()).thenReturn(id);
+    when(other.isOpen()).thenReturn(true);
+    return other;
+  }
+
+  private long awaitSequence(long seq) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 1000;
+    while (publisher.getLastSequence() < seq && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertEquals(seq, publisher.getLastSequence());
+    return seq;
+  }
+
+  private ByteBuffer awaitBinary(int size) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 1000;
+    while (System.currentTimeMillis() < deadline) {
+      synchronized (binary) {
+        if (binary.size() >= size) {
+          return ByteBuffer.wrap(binary.toByteArray());
+        }
+      }
+      Thread.sleep(10);
+    }
+    fail("binary records were not sent");
+    return null;
+  }
+}